@@ -0,0 +1,75 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of {@link ByteFrequencyTable}.
+ * <p>
+ * The parameters that apply to single benchmarks only (the search depth and
+ * the number of slots) are kept in separate states, so that JMH does not
+ * multiply the other benchmarks by them.
+ */
+@State(Scope.Thread)
+public class ByteFrequencyTableBenchmark {
+    @Param({"65536", "1048576"})
+    public int fileSize;
+
+    private byte[] data;
+    private ByteFrequencyTable table;
+
+    @State(Scope.Thread)
+    public static class Depth {
+        @Param({"1", "4", "16"})
+        public int depth;
+    }
+
+    @State(Scope.Thread)
+    public static class Slots {
+        @Param({"1", "4", "16"})
+        public int slots;
+    }
+
+    @Setup
+    public void setup() {
+        data = SyntheticData.zip(fileSize, 42);
+        table = new ByteFrequencyTable();
+        for (byte b : data) {
+            table.addByte(b & 0xFF);
+        }
+    }
+
+    @Benchmark
+    public ByteFrequencyTable addByte() {
+        ByteFrequencyTable t = new ByteFrequencyTable();
+        for (byte b : data) {
+            t.addByte(b & 0xFF);
+        }
+        return t;
+    }
+
+    @Benchmark
+    public int[] getMostFrequentBytes(Depth depth) {
+        return table.getMostFrequentBytes(depth.depth);
+    }
+
+    @Benchmark
+    public double getByteEntropy() {
+        return table.getByteEntropy();
+    }
+
+    @Benchmark
+    public double getIndexOfCoincidence() {
+        return table.getIndexOfCoincidence();
+    }
+
+    @Benchmark
+    public double[] getByteEntropiesOfSlots(Slots slots) {
+        PackedFrequencyTables tables = new PackedFrequencyTables(slots.slots);
+        tables.addBytes(data, 0, data.length, 0);
+        return tables.getByteEntropies();
+    }
+}
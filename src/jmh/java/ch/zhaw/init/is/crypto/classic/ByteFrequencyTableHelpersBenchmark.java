@@ -0,0 +1,37 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Benchmarks of {@link ByteFrequencyTableHelpers}.
+ */
+@State(Scope.Thread)
+public class ByteFrequencyTableHelpersBenchmark {
+    @Param({"65536", "1048576", "16777216"})
+    public int fileSize;
+
+    @Param({"1", "8", "64"})
+    public int keyLength;
+
+    private byte[] ciphertext;
+
+    @Setup
+    public void setup() {
+        ciphertext = SyntheticData.xor(SyntheticData.zip(fileSize, 42), SyntheticData.key(keyLength, 7));
+    }
+
+    @Benchmark
+    public ByteFrequencyTable[] getFrequencyTableForKeyLength() throws IOException {
+        DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new ByteArrayInputStream(ciphertext)));
+        return ByteFrequencyTableHelpers.getFrequencyTableForKeyLength(keyLength, inputStream);
+    }
+}
@@ -0,0 +1,74 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Generates a reproducible corpus of XOR-encrypted files for the end-to-end
+ * benchmarks of {@link CrackBenchmark}. For each combination of size,
+ * compressibility and key length, one encrypted ZIP file and one encrypted
+ * plaintext file are written. The ground truth is recorded in
+ * <tt>manifest.jsonl</tt>, one JSON object per file.
+ * <p>
+ * Usage:<br>
+ * <tt>CorpusGenerator outputdir [sizes] [compressibilities] [keylengths] [seed]</tt>
+ * <p>
+ * The lists are comma separated, e.g. <tt>CorpusGenerator corpus 65536,1048576 1.0,0.8 3,6 1</tt>.
+ */
+public class CorpusGenerator {
+    public static final String MANIFEST = "manifest.jsonl";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: CorpusGenerator outputdir [sizes] [compressibilities] [keylengths] [seed]");
+            return;
+        }
+        Path dir = Paths.get(args[0]);
+        String[] sizes = (args.length > 1 ? args[1] : "65536,1048576").split(",");
+        String[] compressibilities = (args.length > 2 ? args[2] : "1.0,0.8").split(",");
+        String[] keyLengths = (args.length > 3 ? args[3] : "3,6").split(",");
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+
+        Files.createDirectories(dir);
+        try (PrintWriter manifest = new PrintWriter(Files.newBufferedWriter(dir.resolve(MANIFEST)))) {
+            for (String size : sizes) {
+                for (String compressibility : compressibilities) {
+                    for (String keyLength : keyLengths) {
+                        int n = Integer.parseInt(size);
+                        double c = Double.parseDouble(compressibility);
+                        int[] key = SyntheticData.key(Integer.parseInt(keyLength), seed++);
+                        String suffix = String.format(Locale.ROOT, "%d-c%.2f-k%d.bin", n, c, key.length);
+                        write(manifest, dir, "zip-" + suffix, "zip", SyntheticData.zip(n, 1024, c, seed++), key, c);
+                        write(manifest, dir, "plain-" + suffix, "plain", SyntheticData.plaintext(n, c, seed++), key, c);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void write(PrintWriter manifest, Path dir, String name, String type,
+                              byte[] plaintext, int[] key, double compressibility) throws IOException {
+        Files.write(dir.resolve(name), SyntheticData.xor(plaintext, key));
+        ByteFrequencyTable table = new ByteFrequencyTable();
+        for (byte b : plaintext) {
+            table.addByte(b & 0xFF);
+        }
+        manifest.println(String.format(Locale.ROOT,
+                "{\"file\":\"%s\",\"type\":\"%s\",\"size\":%d,\"compressibility\":%.2f,"
+                        + "\"keyLength\":%d,\"key\":\"%s\",\"mostFrequentByte\":%d}",
+                name, type, plaintext.length, compressibility, key.length, toHex(key), table.getMostFrequentByte()));
+        System.out.println("Generated " + name);
+    }
+
+    static String toHex(int[] key) {
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < key.length; i++) {
+            hex.append(i == 0 ? "" : " ").append(String.format("%02x", key[i]));
+        }
+        return hex.toString();
+    }
+}
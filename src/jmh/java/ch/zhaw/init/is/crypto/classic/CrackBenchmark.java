@@ -0,0 +1,160 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * End-to-end benchmark of the crackers over a corpus generated by
+ * {@link CorpusGenerator}. Encrypted ZIP files are cracked with
+ * {@link XorAndCompressCracker#determineKey}, plaintext files with the
+ * frequency analysis of XorCrackerApp.
+ * <p>
+ * Every run is done in a fresh JVM, so that the peak RSS and the timings
+ * of different runs do not influence each other. The results (time-to-key,
+ * trials-to-key, peak RSS, correctness) are written as JSON for diffing
+ * between releases.
+ * <p>
+ * Usage:<br>
+ * <tt>CrackBenchmark corpusdir [threads] [depth] [outputfile]</tt>
+ * <p>
+ * Example: <tt>CrackBenchmark corpus 1,2,4 4 results.json</tt>
+ */
+public class CrackBenchmark {
+    private static final Pattern JSON_FIELD = Pattern.compile("\"(\\w+)\":(\"([^\"]*)\"|[^,}]*)");
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--run")) {
+            System.out.println(runSingle(args[1], args[2], Integer.parseInt(args[3]),
+                    Integer.parseInt(args[4]), Integer.parseInt(args[5])));
+            return;
+        }
+        if (args.length < 1) {
+            System.out.println("Usage: CrackBenchmark corpusdir [threads] [depth] [outputfile]");
+            return;
+        }
+        Path corpus = Paths.get(args[0]);
+        String[] threadCounts = (args.length > 1 ? args[1] : "1," + Runtime.getRuntime().availableProcessors()).split(",");
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        List<String> results = new ArrayList<>();
+        for (String line : Files.readAllLines(corpus.resolve(CorpusGenerator.MANIFEST))) {
+            Map<String, String> entry = parseJson(line);
+            String[] threads = entry.get("type").equals("zip") ? threadCounts : new String[]{"1"};
+            for (String t : threads) {
+                int parameter = entry.get("type").equals("zip") ? depth : Integer.parseInt(entry.get("mostFrequentByte"));
+                Map<String, String> result = parseJson(fork(corpus.resolve(entry.get("file")).toString(),
+                        entry.get("type"), Integer.parseInt(entry.get("keyLength")), parameter, Integer.parseInt(t)));
+                boolean correct = entry.get("key").equals(result.get("key"));
+                results.add(String.format(Locale.ROOT,
+                        "    {\"file\":\"%s\",\"type\":\"%s\",\"size\":%s,\"compressibility\":%s,\"keyLength\":%s,"
+                                + "\"depth\":%d,\"threads\":%s,\"correct\":%b,\"timeToKeyMillis\":%s,\"trialsToKey\":%s,"
+                                + "\"peakRssKb\":%s}",
+                        entry.get("file"), entry.get("type"), entry.get("size"), entry.get("compressibility"),
+                        entry.get("keyLength"), entry.get("type").equals("zip") ? depth : 0, t, correct,
+                        result.get("timeToKeyMillis"), result.get("trialsToKey"), result.get("peakRssKb")));
+                System.out.println(results.get(results.size() - 1).trim());
+            }
+        }
+
+        String json = "{\n"
+                + "  \"timestamp\": \"" + Instant.now() + "\",\n"
+                + "  \"javaVersion\": \"" + System.getProperty("java.version") + "\",\n"
+                + "  \"availableProcessors\": " + Runtime.getRuntime().availableProcessors() + ",\n"
+                + "  \"results\": [\n" + String.join(",\n", results) + "\n  ]\n}\n";
+        if (args.length > 3) {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(args[3])))) {
+                out.print(json);
+            }
+        } else {
+            System.out.print(json);
+        }
+    }
+
+    private static String fork(String file, String type, int keyLength, int parameter, int threads)
+            throws IOException, InterruptedException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                CrackBenchmark.class.getName(), "--run", file, type,
+                String.valueOf(keyLength), String.valueOf(parameter), String.valueOf(threads))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        String last = "{}";
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                last = line;
+            }
+        }
+        process.waitFor();
+        return last;
+    }
+
+    /**
+     * Cracks a single file and returns the measurements as a JSON object.
+     *
+     * @param parameter The search depth for ZIP files or the most frequent
+     *                  plaintext byte for plaintext files
+     */
+    private static String runSingle(String file, String type, int keyLength, int parameter, int threads)
+            throws IOException {
+        int[] key;
+        long trials;
+        long start = System.nanoTime();
+        if (type.equals("zip")) {
+            XorAndCompressCracker cracker = new XorAndCompressCracker(file);
+            cracker.setParallelism(threads);
+            key = cracker.determineKey(keyLength, parameter);
+            trials = (long) cracker.getProgressAbsolute();
+        } else {
+            DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            key = ByteFrequencyTableHelpers.getCandidateKey(
+                    ByteFrequencyTableHelpers.getFrequencyTableForKeyLength(keyLength, inputStream), parameter);
+            trials = 1;
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        return String.format(Locale.ROOT, "{\"key\":\"%s\",\"timeToKeyMillis\":%d,\"trialsToKey\":%d,\"peakRssKb\":%d}",
+                key == null ? "" : CorpusGenerator.toHex(key), millis, trials, getPeakRssKb());
+    }
+
+    /**
+     * @return The peak resident set size of this process in KB (Linux), or the
+     * committed heap as approximation on other platforms
+     */
+    private static long getPeakRssKb() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException ignored) {
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getCommitted() / 1024;
+    }
+
+    private static Map<String, String> parseJson(String line) {
+        Map<String, String> fields = new HashMap<>();
+        Matcher matcher = JSON_FIELD.matcher(line);
+        while (matcher.find()) {
+            fields.put(matcher.group(1), matcher.group(3) != null ? matcher.group(3) : matcher.group(2).trim());
+        }
+        return fields;
+    }
+}
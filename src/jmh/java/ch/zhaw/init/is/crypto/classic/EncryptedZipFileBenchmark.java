@@ -0,0 +1,51 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Benchmarks of {@link EncryptedZipFile#tryDecryption} with the correct key
+ * (staged confirmation, optionally with a full walk of the archive) and with
+ * a wrong key (rejection).
+ */
+@State(Scope.Thread)
+public class EncryptedZipFileBenchmark {
+    @Param({"65536", "1048576"})
+    public int fileSize;
+
+    @Param({"4", "8", "16"})
+    public int keyLength;
+
+    @Param({"false", "true"})
+    public boolean fullWalk;
+
+    private EncryptedZipFile file;
+    private int[] key;
+    private int[] wrongKey;
+
+    @Setup
+    public void setup() throws IOException {
+        key = SyntheticData.key(keyLength, 7);
+        wrongKey = key.clone();
+        wrongKey[keyLength - 1] ^= 0x5A;
+        byte[] ciphertext = SyntheticData.xor(SyntheticData.zip(fileSize, 42), key);
+        file = EncryptedZipFile.create(new ByteArrayInputStream(ciphertext));
+        file.setFullWalk(fullWalk);
+    }
+
+    @Benchmark
+    public boolean tryDecryptionCorrectKey() {
+        return file.tryDecryption(key);
+    }
+
+    @Benchmark
+    public boolean tryDecryptionWrongKey() {
+        return file.tryDecryption(wrongKey);
+    }
+}
@@ -0,0 +1,37 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of {@link HammingDistanceScorer} compared with the entropy scores
+ * of {@link KeyLengthDetector}.
+ */
+@State(Scope.Thread)
+public class HammingDistanceScorerBenchmark {
+    @Param({"65536", "1048576"})
+    public int fileSize;
+
+    @Param({"8", "32"})
+    public int maxKeylength;
+
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        data = SyntheticData.xor(SyntheticData.plaintext(fileSize, 0.8, 42), SyntheticData.key(6, 42));
+    }
+
+    @Benchmark
+    public double[] hammingScores() {
+        return new HammingDistanceScorer(maxKeylength).getScores(data);
+    }
+
+    @Benchmark
+    public double[] entropyScores() {
+        return KeyLengthDetector.getScores(data, maxKeylength);
+    }
+}
@@ -0,0 +1,67 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the candidate key iteration of {@link KeyGenerator}.
+ * Each invocation generates {@value #KEYS} keys, so the reported
+ * scores are per key. With known plaintext, the generator is restricted to
+ * keys producing a ZIP local file header; when it runs out of keys, it is
+ * recreated, so the scores then include the precomputation of its tables.
+ */
+@State(Scope.Thread)
+public class KeyGeneratorBenchmark {
+    private static final int KEYS = 4096;
+
+    @Param({"4", "8", "16"})
+    public int keyLength;
+
+    @Param({"2", "4", "8"})
+    public int depth;
+
+    @Param({"ODOMETER", "BEST_FIRST"})
+    public KeyGenerator.Order order;
+
+    @Param({"false", "true"})
+    public boolean knownPlaintext;
+
+    private ByteFrequencyTable[] tables;
+    private byte[] ciphertext;
+
+    @Setup
+    public void setup() {
+        tables = new ByteFrequencyTable[keyLength];
+        ciphertext = SyntheticData.xor(SyntheticData.zip(65536, 42), SyntheticData.key(keyLength, 7));
+        for (int i = 0; i < keyLength; i++) {
+            tables[i] = new ByteFrequencyTable();
+        }
+        for (int i = 0; i < ciphertext.length; i++) {
+            tables[i % keyLength].addByte(ciphertext[i] & 0xFF);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEYS)
+    public void getNextCandidateKey(Blackhole blackhole) {
+        KeyGenerator generator = newKeyGenerator();
+        for (int i = 0; i < KEYS; i++) {
+            int[] key = generator.getNextCandidateKey();
+            if (key == null) {
+                generator = newKeyGenerator();
+                key = generator.getNextCandidateKey();
+            }
+            blackhole.consume(key);
+        }
+    }
+
+    private KeyGenerator newKeyGenerator() {
+        return new KeyGenerator(tables, depth, 0, order,
+                knownPlaintext ? KnownPlaintext.zipLocalHeader() : null, ciphertext);
+    }
+}
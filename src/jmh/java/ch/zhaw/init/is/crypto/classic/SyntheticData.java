@@ -0,0 +1,122 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * This class generates reproducible synthetic data for the benchmarks:
+ * compressible plaintexts, ZIP files built from them and XOR-encrypted
+ * versions of both.
+ */
+public class SyntheticData {
+    private static final String[] WORDS = {"the", "of", "and", "to", "in", "is", "was", "that", "for",
+            "on", "with", "as", "by", "at", "from", "key", "byte", "file", "data", "cipher", "plain", "zip"};
+
+    private SyntheticData() {
+    }
+
+    /**
+     * Generates text-like plaintext. With compressibility 1, the text consists of
+     * words only and compresses well; with compressibility 0, it consists of
+     * uniformly random bytes and does not compress at all.
+     *
+     * @param size            The size in bytes
+     * @param compressibility The share of word bytes in 0..1
+     * @param seed            The seed of the random generator
+     * @return The plaintext
+     */
+    public static byte[] plaintext(int size, double compressibility, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[size];
+        int i = 0;
+        while (i < size) {
+            if (random.nextDouble() < compressibility) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                for (int j = 0; j < word.length() && i < size; j++) {
+                    data[i++] = (byte) word.charAt(j);
+                }
+                if (i < size) {
+                    data[i++] = ' ';
+                }
+            } else {
+                data[i++] = (byte) random.nextInt(256);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Generates a ZIP file of approximately the given size. The file consists of
+     * deflated entries of entrySize bytes of plaintext each.
+     *
+     * @param size            The approximate size of the ZIP file in bytes
+     * @param entrySize       The uncompressed size of each entry in bytes
+     * @param compressibility The compressibility of the entries (see {@link #plaintext})
+     * @param seed            The seed of the random generator
+     * @return The ZIP file
+     */
+    public static byte[] zip(int size, int entrySize, double compressibility, long seed) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            int entry = 0;
+            while (bytes.size() < size) {
+                zip.putNextEntry(new ZipEntry("entry" + entry + ".txt"));
+                zip.write(plaintext(entrySize, compressibility, seed + entry));
+                zip.closeEntry();
+                zip.flush();
+                entry++;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Generates a ZIP file of approximately the given size with small,
+     * well compressible entries.
+     *
+     * @param size The approximate size of the ZIP file in bytes
+     * @param seed The seed of the random generator
+     * @return The ZIP file
+     */
+    public static byte[] zip(int size, long seed) {
+        return zip(size, 1024, 1.0, seed);
+    }
+
+    /**
+     * Generates a random key.
+     *
+     * @param length The key length in bytes
+     * @param seed   The seed of the random generator
+     * @return The key
+     */
+    public static int[] key(int length, long seed) {
+        Random random = new Random(seed);
+        int[] key = new int[length];
+        for (int i = 0; i < length; i++) {
+            key[i] = random.nextInt(256);
+        }
+        return key;
+    }
+
+    /**
+     * XORs the data with the repeating key.
+     *
+     * @param data The data
+     * @param key  The key
+     * @return The XOR-ed copy of the data
+     */
+    public static byte[] xor(byte[] data, int[] key) {
+        byte[] result = new byte[data.length];
+        int keyIndex = 0;
+        for (int i = 0; i < data.length; i++) {
+            result[i] = (byte) (data[i] ^ key[keyIndex]);
+            keyIndex = (keyIndex + 1) % key.length;
+        }
+        return result;
+    }
+}
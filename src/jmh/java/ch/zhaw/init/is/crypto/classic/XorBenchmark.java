@@ -0,0 +1,56 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Benchmarks of XOR-ing data with a repeating key, once with the byte-wise
+ * stream loop of XorWithKeyApp and once on an in-memory array.
+ */
+@State(Scope.Thread)
+public class XorBenchmark {
+    @Param({"65536", "1048576", "16777216"})
+    public int fileSize;
+
+    @Param({"1", "8", "64"})
+    public int keyLength;
+
+    private byte[] data;
+    private int[] key;
+
+    @Setup
+    public void setup() {
+        data = SyntheticData.zip(fileSize, 42);
+        key = SyntheticData.key(keyLength, 7);
+    }
+
+    @Benchmark
+    public byte[] xorStream() throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream(data.length);
+        try (BufferedInputStream in = new BufferedInputStream(new ByteArrayInputStream(data));
+             BufferedOutputStream out = new BufferedOutputStream(result)) {
+            int pos = 0;
+            int byteValue = in.read();
+            while (byteValue != -1) {
+                out.write(byteValue ^ key[pos]);
+                pos = (pos + 1) % key.length;
+                byteValue = in.read();
+            }
+        }
+        return result.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] xorArray() {
+        return SyntheticData.xor(data, key);
+    }
+}
@@ -0,0 +1,76 @@
+import ch.zhaw.init.is.crypto.classic.BatchCracker;
+import ch.zhaw.init.is.crypto.classic.SearchBudget;
+import ch.zhaw.init.is.util.CpuQuota;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Application for cracking all files in a directory that have been compressed
+ * with ZIP (deflate) before they were encrypted with the XOR method.
+ * The key length of each file is detected automatically. The files are
+ * processed concurrently, cheapest first, and the result of each file is
+ * printed as soon as it is available.
+ * <p>
+ * Usage:<br>
+ * <tt>  BatchCrackerApp directory [maxkeylength] [depth] [budget] [threads] [ioconcurrency]</tt>
+ * <p>
+ * Arguments:<br>
+ * <ul>
+ * <li>directory: The directory containing the encrypted files
+ * </ul><p>
+ * Options:<br>
+ * <ul>
+ * <li>maxkeylength: The maximum key length in bytes. Default is 16.
+ * <li>depth: The search depth (top 'depth' most frequent bytes per key byte). Default is 4.
+ * <li>budget: The budget of the key search per file as number of trials or time
+ * (e.g., <tt>1000000</tt>, <tt>30s</tt>). Default is 1000000 trials.
+ * <li>threads: The number of threads analyzing files and searching keys.
+ * Default is the number of available processors (limited by the CPU quota of a container).
+ * <li>ioconcurrency: The maximum number of files read or analyzed at the same time. Default is 64.
+ * </ul>
+ * <p>
+ * Output: One line per file with the tab separated fields file, status
+ * (FOUND, NOT_FOUND, BUDGET_EXHAUSTED, ERROR), key length and key.
+ */
+public class BatchCrackerApp {
+
+    /**
+     * Main method of the application
+     *
+     * @param args Command line arguments
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 6) {
+            usage();
+            return;
+        }
+        BatchCracker cracker;
+        try {
+            int maxKeylength = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+            int depth = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+            SearchBudget budget = args.length > 3 ? SearchBudget.parse(args[3]) : SearchBudget.ofTrials(1000000);
+            int threads = args.length > 4 ? Integer.parseInt(args[4]) : CpuQuota.getAvailableProcessors();
+            int ioConcurrency = args.length > 5 ? Integer.parseInt(args[5]) : 64;
+            cracker = new BatchCracker(threads, ioConcurrency, maxKeylength, depth, budget);
+        } catch (IllegalArgumentException e) {
+            usage();
+            return;
+        }
+        try {
+            cracker.crack(Paths.get(args[0]), BatchCrackerApp::printResult);
+        } catch (IOException | InterruptedException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            cracker.shutdown();
+        }
+    }
+
+    private static synchronized void printResult(BatchCracker.Result result) {
+        System.out.println(result);
+    }
+
+    private static void usage() {
+        System.out.println("Usage: BatchCrackerApp directory [maxkeylength] [depth] [budget] [threads] [ioconcurrency]");
+    }
+}
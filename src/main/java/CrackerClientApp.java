@@ -0,0 +1,100 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Application submitting a job to a running CrackerDaemonApp and printing
+ * its output, with the same arguments as the application run by the daemon.
+ * <p>
+ * Usage:<br>
+ * <tt>  CrackerClientApp [--port port] application [arguments]</tt>
+ * <p>
+ * Arguments:<br>
+ * <ul>
+ * <li>application: One of <tt>XorAndCompressCrackerApp</tt>, <tt>XorCrackerApp</tt>,
+ * <tt>HistogramApp</tt>, <tt>XorWithKeyApp</tt>
+ * <li>arguments: The command line arguments of the application
+ * </ul><p>
+ * Options:<br>
+ * <ul>
+ * <li>--port: The port of the daemon. Default is {@value CrackerDaemonApp#PORT}.
+ * </ul>
+ * <p>
+ * Example: <tt>CrackerClientApp XorAndCompressCrackerApp secret.zip.enc 6 4</tt>
+ * <p>
+ * Since the daemon may run in another directory, arguments that are relative
+ * paths are made absolute before they are sent: arguments naming an existing
+ * file or directory, and arguments containing a dot or a path separator (e.g.,
+ * an output file). Single characters and options are sent as they are.
+ * Standard input is not forwarded. Stopping the client stops the job.
+ */
+public class CrackerClientApp {
+    private static final String PORT_OPTION = "--port";
+
+    /**
+     * Main method of the application
+     *
+     * @param args Command line arguments
+     */
+    public static void main(String[] args) {
+        int port = CrackerDaemonApp.PORT;
+        if (args.length >= 2 && args[0].equals(PORT_OPTION)) {
+            try {
+                port = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                usage();
+                return;
+            }
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+        if (args.length < 1 || Arrays.stream(args).anyMatch(a -> a.contains(CrackerDaemonApp.SEPARATOR))) {
+            usage();
+            return;
+        }
+        StringBuilder job = new StringBuilder(args[0]);
+        for (int i = 1; i < args.length; i++) {
+            job.append(CrackerDaemonApp.SEPARATOR).append(toAbsolutePath(args[i]));
+        }
+        job.append('\n');
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(job.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                System.out.write(buffer, 0, read);
+                System.out.flush();
+            }
+        } catch (IOException e) {
+            System.out.println("Cannot reach the daemon on port " + port + ": " + e.getMessage());
+        }
+    }
+
+    private static String toAbsolutePath(String arg) {
+        if (arg.length() < 2 || arg.startsWith("-")) {
+            return arg;
+        }
+        try {
+            if (Files.exists(Paths.get(arg)) || arg.contains(".") || arg.contains(File.separator)) {
+                return Paths.get(arg).toAbsolutePath().toString();
+            }
+        } catch (InvalidPathException e) {
+            // Not a path
+        }
+        return arg;
+    }
+
+    private static void usage() {
+        System.out.println("Usage: CrackerClientApp [--port port] application [arguments]");
+    }
+}
@@ -0,0 +1,318 @@
+import ch.zhaw.init.is.crypto.classic.FrequencyTableCache;
+import ch.zhaw.init.is.util.CpuQuota;
+import ch.zhaw.init.is.util.OutputRouter;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Application keeping the crackers resident in a long-running JVM, so that
+ * many small jobs do not pay for the startup of a JVM and the warmup of the
+ * JIT compiler each. The jobs share the caches of the JVM, e.g., the byte
+ * frequency tables of files ({@link FrequencyTableCache}). As many jobs run
+ * concurrently as there are available processors ({@link CpuQuota}); further
+ * jobs wait until one has finished. A job searches with its share of the
+ * processors: their number divided by the number of jobs running when it starts.
+ * <p>
+ * Usage:<br>
+ * <tt>  CrackerDaemonApp [--port port]</tt>
+ * <p>
+ * Options:<br>
+ * <ul>
+ * <li>--port: Accept jobs on the TCP port on the loopback interface (see
+ * CrackerClientApp) instead of on standard input. Default port is {@value #PORT}.
+ * </ul>
+ * <p>
+ * A job is one line with the tab separated fields application and arguments,
+ * e.g., <tt>XorCrackerApp&#9;secret.txt.enc&#9;3</tt>, where the application
+ * is one of {@value #APPLICATIONS}. The arguments are the same as on the
+ * command line of the application; relative paths are resolved against the
+ * working directory of the daemon.
+ * <p>
+ * On standard input, every line is a job, and the jobs are numbered from 1.
+ * Every line of output of a job is prefixed with its number and a tab, and
+ * the last line of a job is its number followed by <tt>DONE</tt>. The daemon
+ * ends at the end of standard input, after all jobs have finished.
+ * <p>
+ * On the port, every connection is a job: the client sends the line of the
+ * job, the daemon sends the output, and the connection is closed when the job
+ * has finished. If the client closes the connection before, the job is
+ * cancelled (e.g., a key search stops), or removed if it is still waiting.
+ * <p>
+ * The daemon runs headless, so <tt>HistogramApp</tt> needs <tt>--png</tt> or
+ * <tt>--svg</tt>. Standard input is not forwarded to jobs, so jobs reading
+ * from <tt>-</tt> are refused, as are jobs with <tt>--follow</tt>, which would
+ * never end. Standard output and standard error of a job, including the
+ * periodic progress of its search, go to the job's destination; output of
+ * other threads started by a job goes to the standard error of the daemon,
+ * which also logs the finished jobs.
+ * <tt>HistogramApp</tt> and <tt>XorWithKeyApp</tt> keep their arguments in
+ * static fields and therefore run one job at a time on a thread of their own,
+ * without occupying one of the threads of the other jobs.
+ * The port is only reachable from the local host, but every local user can
+ * submit jobs that read and write files with the rights of the daemon.
+ */
+public class CrackerDaemonApp {
+    /**
+     * Default TCP port.
+     */
+    public static final int PORT = 7337;
+    /**
+     * Separator of the fields of a job.
+     */
+    public static final String SEPARATOR = "\t";
+    private static final String APPLICATIONS = "XorAndCompressCrackerApp, XorCrackerApp, HistogramApp, XorWithKeyApp";
+    private static final String[] SERIALIZED_APPLICATIONS = {"HistogramApp", "XorWithKeyApp"};
+    private static final String PORT_OPTION = "--port";
+    private static final String DONE = "DONE";
+    private static final String STDIN = "-";
+    private static final String FOLLOW = "--follow";
+
+    private final Map<String, Method> applications = new TreeMap<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(CpuQuota.getAvailableProcessors());
+    private final ExecutorService serialized = Executors.newSingleThreadExecutor();
+    private final ExecutorService connections = Executors.newCachedThreadPool();
+    private final AtomicInteger jobs = new AtomicInteger();
+    private final AtomicInteger runningJobs = new AtomicInteger();
+    private final PrintStream output = System.out;
+    private final PrintStream log = System.err;
+    private final OutputRouter router = new OutputRouter(log);
+    private final OutputRouter errorRouter = new OutputRouter(log);
+
+    /**
+     * Main method of the application
+     *
+     * @param args Command line arguments
+     */
+    public static void main(String[] args) {
+        int port;
+        if (args.length == 0) {
+            port = 0;
+        } else if (args.length >= 1 && args.length <= 2 && args[0].equals(PORT_OPTION)) {
+            try {
+                port = args.length == 2 ? Integer.parseInt(args[1]) : PORT;
+            } catch (NumberFormatException e) {
+                usage();
+                return;
+            }
+        } else {
+            usage();
+            return;
+        }
+        try {
+            CrackerDaemonApp daemon = new CrackerDaemonApp();
+            if (port == 0) {
+                daemon.serveStandardInput();
+            } else {
+                daemon.serve(port);
+            }
+        } catch (IOException | ReflectiveOperationException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Usage: CrackerDaemonApp [--port port]");
+    }
+
+    private CrackerDaemonApp() throws ReflectiveOperationException {
+        for (String name : APPLICATIONS.split(", ")) {
+            applications.put(name, Class.forName(name).getMethod("main", String[].class));
+        }
+        System.setProperty("java.awt.headless", "true");
+        System.setOut(new PrintStream(router, true));
+        System.setErr(new PrintStream(errorRouter, true));
+    }
+
+    /**
+     * Reads jobs from standard input until its end and waits for them.
+     */
+    private void serveStandardInput() throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        List<Future<?>> running = new ArrayList<>();
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            String job = line;
+            int id = jobs.incrementAndGet();
+            running.add(getExecutor(job).submit(() -> {
+                OutputStream out = new PrefixingOutputStream(id + SEPARATOR, output);
+                runJob(id, job, out);
+                println(out, DONE);
+            }));
+        }
+        for (Future<?> job : running) {
+            try {
+                job.get();
+            } catch (Exception e) {
+                log.println(e.getMessage());
+            }
+        }
+        executor.shutdown();
+        serialized.shutdown();
+    }
+
+    /**
+     * Accepts connections on the loopback interface, one job per connection.
+     */
+    private void serve(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+            log.println("Listening on " + server.getLocalSocketAddress());
+            while (true) {
+                Socket socket = server.accept();
+                connections.execute(() -> handle(socket));
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        int id = jobs.incrementAndGet();
+        try (Socket s = socket) {
+            InputStream in = s.getInputStream();
+            String job = readLine(in);
+            OutputStream out = new BufferedOutputStream(s.getOutputStream());
+            Future<?> running = getExecutor(job).submit(() -> {
+                runJob(id, job, out);
+                try {
+                    s.shutdownOutput();
+                } catch (IOException e) {
+                    // The client is gone
+                }
+            });
+            // The client sends nothing after the job, so the end of the input means it has gone
+            while (!running.isDone() && in.read() != -1) {
+            }
+            running.cancel(true);
+        } catch (IOException e) {
+            // The connection is closed when the job has finished, or the client is gone
+        }
+    }
+
+    /**
+     * @return The executor of the job: the applications that keep their arguments
+     * in static fields run one job at a time on their own thread
+     */
+    private ExecutorService getExecutor(String job) {
+        String application = job.split(SEPARATOR, -1)[0];
+        return Arrays.asList(SERIALIZED_APPLICATIONS).contains(application) ? serialized : executor;
+    }
+
+    /**
+     * Runs the main method of the application of the job with the output routed to out.
+     */
+    private void runJob(int id, String job, OutputStream out) {
+        String[] fields = job.split(SEPARATOR, -1);
+        Method main = applications.get(fields[0]);
+        if (main == null) {
+            println(out, "Unknown application: " + fields[0] + ". Supported: " + APPLICATIONS);
+            return;
+        }
+        String[] args = Arrays.copyOfRange(fields, 1, fields.length);
+        if (Arrays.asList(args).contains(STDIN)) {
+            println(out, "Standard input is not available to jobs");
+            return;
+        }
+        if (Arrays.asList(args).contains(FOLLOW)) {
+            println(out, "Following a file is not available to jobs");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        router.route(out);
+        errorRouter.route(out);
+        // Searches set up by the job divide the processors with the other running jobs
+        CpuQuota.setThreadLimit(Math.max(1, CpuQuota.getAvailableProcessors() / runningJobs.incrementAndGet()));
+        try {
+            main.invoke(null, (Object) args);
+        } catch (InvocationTargetException e) {
+            System.out.println("Error: " + e.getCause());
+        } catch (IllegalAccessException e) {
+            System.out.println("Error: " + e.getMessage());
+        } finally {
+            runningJobs.decrementAndGet();
+            CpuQuota.clearThreadLimit();
+            System.out.flush();
+            System.err.flush();
+            router.unroute();
+            errorRouter.unroute();
+        }
+        log.println("Job " + id + " (" + String.join(" ", fields) + ") finished in "
+                + (System.currentTimeMillis() - start) + " ms, frequency table cache hits "
+                + FrequencyTableCache.shared().getHits() + ", misses " + FrequencyTableCache.shared().getMisses());
+    }
+
+    private static void println(OutputStream out, String line) {
+        try {
+            out.write((line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            // The client is gone
+        }
+    }
+
+    /**
+     * Reads the line of a job; a reader would read ahead beyond it.
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes complete lines to the shared stream, each prefixed with the number of the job.
+     */
+    private static class PrefixingOutputStream extends OutputStream {
+        private final byte[] prefix;
+        private final PrintStream shared;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        PrefixingOutputStream(String prefix, PrintStream shared) {
+            this.prefix = prefix.getBytes(StandardCharsets.UTF_8);
+            this.shared = shared;
+        }
+
+        /* (non-Javadoc)
+         * @see java.io.OutputStream#write(int)
+         */
+        @Override
+        public synchronized void write(int b) {
+            line.write(b);
+            if (b == '\n') {
+                synchronized (shared) {
+                    shared.write(prefix, 0, prefix.length);
+                    shared.write(line.toByteArray(), 0, line.size());
+                    shared.flush();
+                }
+                line.reset();
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+import ch.zhaw.init.is.crypto.classic.ByteFrequencyTable;
+import ch.zhaw.init.is.crypto.classic.ByteFrequencyTableHelpers;
+import ch.zhaw.init.is.crypto.classic.CribDragger;
+import ch.zhaw.init.is.util.HexTools;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Application for determining the key of files that have been encrypted with
+ * the XOR method from a known plaintext fragment (crib), e.g., a file name
+ * inside a ZIP file or an HTTP header.
+ * <p>
+ * Usage:<br>
+ * <tt>  CribDragApp file keylength crib [depth [mostfrequentcharacter]]</tt>
+ * <p>
+ * Arguments:<br>
+ * <ul>
+ * <li>file: The encrypted file
+ * <li>keylength: The length of the key in bytes
+ * <li>crib: The known plaintext fragment
+ * </ul><p>
+ * Options:<br>
+ * <ul>
+ * <li>depth: If given, only offsets whose implied key bytes are among the top
+ * 'depth' candidates of the frequency analysis are reported
+ * <li>mostfrequentcharacter: The assumed most frequent byte in the plaintext,
+ * as a character or as a hex value (e.g., <tt>0x00</tt> for compressed data).
+ * Default is <tt>0x00</tt>.
+ * </ul>
+ */
+public class CribDragApp {
+    private static final int MAX_PRINTED_MATCHES = 20;
+    private String filename;
+    private int keylength;
+    private byte[] crib;
+    private int depth;
+    private int mostFrequentCharacter;
+
+    public CribDragApp(String filename, int keylength, byte[] crib, int depth, int mostFrequentCharacter) {
+        this.filename = filename;
+        this.keylength = keylength;
+        this.crib = crib;
+        this.depth = depth;
+        this.mostFrequentCharacter = mostFrequentCharacter;
+    }
+
+    /**
+     * Main method of the application.
+     *
+     * @param args Command line arguments
+     */
+    public static void main(String[] args) {
+        Optional<CribDragApp> app = parseCommandLineParametersToApp(args);
+        app.ifPresentOrElse(a -> {
+            try {
+                a.run();
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }, CribDragApp::usage);
+    }
+
+    private static void usage() {
+        System.out.println("Usage: CribDragApp file keylength crib [depth [mostfrequentcharacter]]");
+    }
+
+    /**
+     * Checks and parses the command line arguments.
+     *
+     * @param args Command line arguments
+     * @return The application, if the arguments could be parsed
+     */
+    private static Optional<CribDragApp> parseCommandLineParametersToApp(String args[]) {
+        if (args.length >= 3 && args.length <= 5 && !args[2].isEmpty()) {
+            try {
+                String filename = args[0];
+                int keylength = Integer.parseInt(args[1]);
+                byte[] crib = args[2].getBytes(StandardCharsets.UTF_8);
+                int depth = args.length >= 4 ? Integer.parseInt(args[3]) : 0;
+                int mostFrequent = 0;
+                if (args.length == 5) {
+                    mostFrequent = args[4].startsWith("0x") ? Integer.parseInt(args[4].substring(2), 16)
+                            : args[4].charAt(0);
+                }
+                return Optional.of(new CribDragApp(filename, keylength, crib, depth, mostFrequent));
+            } catch (NumberFormatException e) {
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Starts and controls the analysis process
+     *
+     * @throws IOException
+     */
+    private void run() throws IOException {
+        CribDragger dragger = new CribDragger(crib, keylength);
+        if (depth > 0) {
+            try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+                ByteFrequencyTable[] frequencyTable = ByteFrequencyTableHelpers.getFrequencyTableForKeyLength(keylength, inputStream);
+                dragger.withFrequencyCandidates(frequencyTable, depth, mostFrequentCharacter);
+            }
+        }
+        List<CribDragger.Match> matches = dragger.drag(Paths.get(filename));
+        System.out.println("Consistent offsets: " + matches.size());
+        for (CribDragger.Match match : matches.stream()
+                .sorted(Comparator.comparingInt(CribDragger.Match::getRankSum))
+                .limit(MAX_PRINTED_MATCHES)
+                .collect(Collectors.toList())) {
+            System.out.println("Offset " + match.getOffset() + " (rank sum " + match.getRankSum() + "): "
+                    + toHexString(match.getKey()));
+        }
+        int[] key = CribDragger.getConsensusKey(matches);
+        if (key != null) {
+            System.out.println("Key: " + HexTools.intArrayToHexString(key));
+        } else {
+            System.out.println("No complete key found. A crib at least as long as the key is needed.");
+        }
+    }
+
+    private static String toHexString(int[] key) {
+        StringBuilder hex = new StringBuilder();
+        for (int b : key) {
+            hex.append(b < 0 ? "??" : String.format("%02x", b)).append(' ');
+        }
+        return hex.toString();
+    }
+}
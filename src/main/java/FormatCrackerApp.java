@@ -0,0 +1,124 @@
+import ch.zhaw.init.is.crypto.classic.MultiFormatCracker;
+import ch.zhaw.init.is.crypto.classic.SearchBudget;
+import ch.zhaw.init.is.crypto.classic.format.PlaintextValidator;
+import ch.zhaw.init.is.crypto.classic.format.PlaintextValidators;
+import ch.zhaw.init.is.util.HexTools;
+import ch.zhaw.init.is.util.ProgressMonitor;
+import ch.zhaw.init.is.util.ProgressTask;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.Timer;
+import java.util.stream.Collectors;
+
+/**
+ * Application for cracking the encryption of files with a known structure
+ * (e.g., ZIP, gzip, zlib, PNG, PDF or ELF) that have been encrypted with the
+ * XOR method. All formats are tested in one pass over the candidate keys.
+ * <p>
+ * Usage:<br>
+ * <tt>  FormatCrackerApp file keylength depth [formats] [budget]</tt>
+ * <p>
+ * Arguments:<br>
+ * <ul>
+ * <li>file: The encrypted file to be cracked
+ * <li>keylength: The length of the key in bytes
+ * <li>depth: The search depth (top 'depth' most frequent bytes per key byte)
+ * </ul><p>
+ * Options:<br>
+ * <ul>
+ * <li>formats: Comma separated names of the formats to test (e.g., <tt>gzip,png</tt>).
+ * Default is <tt>all</tt>.
+ * <li>budget: Limits the search to a number of trials or a time (see
+ * {@link SearchBudget#parse}). Default is unlimited.
+ * </ul>
+ */
+public class FormatCrackerApp {
+    private static final int PROGRESS_INTERVAL = 5000; // in ms
+    private String filename;
+    private int keylength;
+    private int depth;
+    private List<PlaintextValidator> validators;
+    private SearchBudget budget;
+
+    public FormatCrackerApp(String filename, int keylength, int depth, List<PlaintextValidator> validators,
+                            SearchBudget budget) {
+        this.filename = filename;
+        this.keylength = keylength;
+        this.depth = depth;
+        this.validators = validators;
+        this.budget = budget;
+    }
+
+    /**
+     * Main method of the application.
+     *
+     * @param args Command line arguments
+     */
+    public static void main(String[] args) {
+        Optional<FormatCrackerApp> app = parseCommandLineParametersToApp(args);
+        app.ifPresentOrElse(a -> {
+            try {
+                a.run();
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }, FormatCrackerApp::usage);
+    }
+
+    private static void usage() {
+        System.out.println("Usage: FormatCrackerApp file keylength depth [formats] [budget]");
+        System.out.println("Formats: " + PlaintextValidators.getAvailable().stream()
+                .map(PlaintextValidator::getName).collect(Collectors.joining(",")));
+    }
+
+    /**
+     * Checks and parses the command line arguments.
+     *
+     * @param args Command line arguments
+     * @return The application, if the arguments could be parsed
+     */
+    private static Optional<FormatCrackerApp> parseCommandLineParametersToApp(String args[]) {
+        if (args.length >= 3 && args.length <= 5) {
+            try {
+                String filename = args[0];
+                int keylength = Integer.parseInt(args[1]);
+                int depth = Integer.parseInt(args[2]);
+                List<PlaintextValidator> validators = PlaintextValidators.get(
+                        args.length >= 4 ? args[3] : PlaintextValidators.ALL);
+                SearchBudget budget = args.length == 5 ? SearchBudget.parse(args[4]) : SearchBudget.UNLIMITED;
+                return Optional.of(new FormatCrackerApp(filename, keylength, depth, validators, budget));
+            } catch (IllegalArgumentException e) {
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Starts and controls the analysis process
+     *
+     * @throws IOException
+     */
+    private void run() throws IOException {
+        System.out.println("Analyzing file: " + filename);
+        System.out.println("Formats: " + validators.stream()
+                .map(PlaintextValidator::getName).collect(Collectors.joining(",")));
+        MultiFormatCracker cracker = new MultiFormatCracker(Files.readAllBytes(Paths.get(filename)), validators);
+        Timer timer = new Timer(true);
+        timer.schedule(new ProgressTask(new ProgressMonitor(cracker)), PROGRESS_INTERVAL, PROGRESS_INTERVAL);
+        MultiFormatCracker.Result result = cracker.determineKey(keylength, depth, budget);
+        timer.cancel();
+        if (result != null) {
+            System.out.println("Format: " + result.getFormat().getName());
+            System.out.println("Key: " + HexTools.intArrayToHexString(result.getKey()));
+        } else if (cracker.isBudgetExhausted()) {
+            System.out.println("Budget of " + budget + " exhausted after "
+                    + (long) cracker.getProgressAbsolute() + " " + cracker.getUnit());
+        } else {
+            System.out.println("No valid key found. Key too long? Increasing the search depth might help.");
+        }
+    }
+}
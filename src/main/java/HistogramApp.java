@@ -1,9 +1,13 @@
 import ch.zhaw.init.is.crypto.classic.ByteFrequencyTable;
 import ch.zhaw.init.is.crypto.classic.ByteFrequencyTableView;
+import ch.zhaw.init.is.crypto.classic.FileFollower;
+import ch.zhaw.init.is.crypto.classic.FrequencyTableCache;
+import ch.zhaw.init.is.crypto.classic.StreamingHistogram;
 
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 
 /**
@@ -11,11 +15,15 @@ import java.io.IOException;
  * the byte values in a file.
  * <p>
  * Usage:<br>
- * <tt>HistogramApp file [slots]</tt>
+ * <tt>HistogramApp [--follow | --png directory | --svg directory] file [slots]</tt>
  * <p>
  * Arguments:<br>
  * <ul>
- * <li>file:   The file the histogram is generated from
+ * <li>--follow: Follow a growing file (see below)
+ * <li>--png, --svg: Write the histograms as image files into the directory
+ * instead of displaying them (see below)
+ * <li>file:   The file the histogram is generated from, or <tt>-</tt> to read
+ * from standard input
  * </ul><p>
  * Options:<br>
  * <ul>
@@ -29,13 +37,38 @@ import java.io.IOException;
  * A file with content <tt>0x00 0x10 0x20 0x30 0x40 0x50 0x60 0x70</tt> results in
  * two histograms where bytes 1, 3, 5, 7 are used to generate the first
  * and bytes 2, 4, 6, 8 to generate the second histogram.
+ * <p>
+ * When reading from standard input, the histograms are updated while the data is
+ * read, and the most frequent byte and the entropy of each slot are printed every
+ * {@value #INTERIM_INTERVAL} ms.
+ * <p>
+ * With <tt>--follow</tt>, the file is polled every {@value FileFollower#POLL_INTERVAL} ms
+ * until the application is stopped. Only the appended bytes are read, and the most
+ * frequent byte and the entropy of each slot are printed whenever the most
+ * frequent byte of a slot changes.
+ * <p>
+ * With <tt>--png</tt> or <tt>--svg</tt>, no display is needed: the histograms are
+ * written to <tt>histogram-1.png</tt>, <tt>histogram-2.png</tt>, ... with up to 64
+ * slots per image ({@link ByteFrequencyTableView#writeImages}). With more than
+ * {@value #DOWNSAMPLING_SLOTS} slots, 4 adjacent byte values are combined into one bar.
  *
  * @author tebe
  */
 
 public class HistogramApp {
+    private static final String STDIN = "-";
+    private static final int INTERIM_INTERVAL = 5000; // in ms
+    private static final String FOLLOW = "--follow";
+    private static final String PNG = "--png";
+    private static final String SVG = "--svg";
+    private static final String IMAGE_NAME = "histogram";
+    private static final int DOWNSAMPLING_SLOTS = 64;
+    private static final int DOWNSAMPLED_BIN_WIDTH = 4;
     private static String filename;
     private static int slots = 1;
+    private static boolean follow;
+    private static ByteFrequencyTableView.Format imageFormat;
+    private static Path imageDirectory;
 
     /**
      * Main method of the application
@@ -45,9 +78,23 @@ public class HistogramApp {
     public static void main(String[] args) {
         if (parseCommandLineParameters(args)) {
             try {
+                if (follow) {
+                    new FileFollower(Paths.get(filename), slots).follow(
+                            f -> printInterimResult(f.getHistogram()), () -> false);
+                    return;
+                }
                 ByteFrequencyTable[] frequencyTable = getFrequencyTables(filename, slots);
                 printByteEntropies(frequencyTable);
                 ByteFrequencyTableView view = new ByteFrequencyTableView(frequencyTable);
+                if (imageFormat != null) {
+                    if (slots > DOWNSAMPLING_SLOTS) {
+                        view.withBinWidth(DOWNSAMPLED_BIN_WIDTH);
+                    }
+                    for (Path image : view.writeImages(imageDirectory, IMAGE_NAME, imageFormat)) {
+                        System.out.println("Written: " + image);
+                    }
+                    return;
+                }
                 view.display();
             } catch (IOException e) {
                 System.out.println(e.getMessage());
@@ -65,6 +112,15 @@ public class HistogramApp {
 
     }
 
+    private static void printInterimResult(StreamingHistogram histogram) {
+        System.out.println("-- After " + histogram.getBytesProcessed() + " bytes --");
+        ByteFrequencyTable[] frequencyTable = histogram.getFrequencyTables();
+        for (int i = 0; i < frequencyTable.length; i++) {
+            System.out.println("Slot " + i + ": most frequent byte " + Integer.toHexString(frequencyTable[i].getMostFrequentByte())
+                    + ", entropy " + frequencyTable[i].getByteEntropy());
+        }
+    }
+
     /**
      * Checks and parses the command line arguments.
      *
@@ -72,6 +128,19 @@ public class HistogramApp {
      * @return true, if the arguments could be parsed
      */
     private static boolean parseCommandLineParameters(String args[]) {
+        // Reset the options of a previous run in the same JVM (e.g., in CrackerDaemonApp)
+        slots = 1;
+        follow = false;
+        imageFormat = null;
+        imageDirectory = null;
+        if (args.length >= 1 && args[0].equals(FOLLOW)) {
+            follow = true;
+            args = Arrays.copyOfRange(args, 1, args.length);
+        } else if (args.length >= 2 && (args[0].equals(PNG) || args[0].equals(SVG))) {
+            imageFormat = args[0].equals(PNG) ? ByteFrequencyTableView.Format.PNG : ByteFrequencyTableView.Format.SVG;
+            imageDirectory = Paths.get(args[1]);
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
         if (args.length >= 1 && args.length < 3) {
             filename = args[0];
             if (args.length == 2) {
@@ -96,33 +165,19 @@ public class HistogramApp {
      * @throws IOException
      */
     private static ByteFrequencyTable[] getFrequencyTables(String filename, int slots) throws IOException {
-        ByteFrequencyTable[] frequencyTable = new ByteFrequencyTable[slots];
-        for (int i = 0; i < frequencyTable.length; i++) {
-            frequencyTable[i] = new ByteFrequencyTable();
-        }
-        BufferedInputStream inputStream = new BufferedInputStream(new FileInputStream(filename));
-        try {
-            int i = 0;
-            int byteValue = inputStream.read();
-            while (byteValue != -1) {
-                frequencyTable[i % frequencyTable.length].addByte(byteValue);
-                i++;
-                byteValue = inputStream.read();
-            }
-
-
-        } finally {
-            if (inputStream != null)
-                inputStream.close();
+        if (filename.equals(STDIN)) {
+            StreamingHistogram histogram = new StreamingHistogram(slots);
+            histogram.process(System.in, INTERIM_INTERVAL, HistogramApp::printInterimResult);
+            return histogram.getFrequencyTables();
         }
-        return frequencyTable;
+        return FrequencyTableCache.shared().getFrequencyTables(Paths.get(filename), slots);
     }
 
     /**
      * Prints the usage string.
      */
     private static void usage() {
-        System.out.println("HistogramApp file [slots]");
+        System.out.println("HistogramApp [--follow | --png directory | --svg directory] file|- [slots]");
     }
 
 
@@ -1,9 +1,15 @@
+import ch.zhaw.init.is.crypto.classic.CrackJob;
+import ch.zhaw.init.is.crypto.classic.SearchBudget;
 import ch.zhaw.init.is.crypto.classic.XorAndCompressCracker;
+import ch.zhaw.init.is.util.CpuQuota;
 import ch.zhaw.init.is.util.HexTools;
-import ch.zhaw.init.is.util.ProgressTask;
+import ch.zhaw.init.is.util.ProgressMonitor;
 
-import java.io.IOException;
-import java.util.Timer;
+import java.io.UncheckedIOException;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
 
 /**
  * Application for cracking the encryption of files that have been compressed
@@ -11,26 +17,58 @@ import java.util.Timer;
  * lengths much smaller than the size of the compressed plaintext.
  * <p>
  * Usage:<br>
- * <tt>  XorAndCompressCrackerApp file keylength depth</tt>
+ * <tt>  XorAndCompressCrackerApp [--dfs] file keylength|minkeylength-maxkeylength depth [budget]</tt>
  * <p>
  * Arguments:<br>
  * <ul>
  * <li>file: The encrypted ZIP file to be cracked
- * <li>keylength: The length of the key in bytes
+ * <li>keylength: The length of the key in bytes, or a range of key lengths
+ * (e.g., <tt>3-12</tt>) that is swept in one search; keys repeating with a
+ * shorter key length already searched are skipped and reported as saved trials
  * <li>depth: The search depth (top 'depth' most frequent bytes per key byte)
+ * </ul><p>
+ * Options:<br>
+ * <ul>
+ * <li>--dfs: Search depth-first in odometer order and skip all keys whose
+ * bytes chosen so far already contradict the ZIP local file header
+ * <li>budget: Limits the search to a number of trials (e.g., <tt>1000000</tt>)
+ * or a time (e.g., <tt>30s</tt>, <tt>10m</tt>, <tt>2h</tt>). Default is unlimited.
  * </ul>
  * <p>
+ * Candidate keys are tested best-first. If the budget runs out, the coverage of
+ * the search space reached so far is reported. The progress lines include the
+ * number of threads and the number of keys per batch chosen by the search
+ * (<tt>workers</tt>, <tt>batchSize</tt>) and the measured time per trial in ns
+ * (<tt>trialNanos</tt>).
+ * <p>
  * Note: If the combination of key length and depth would result in testing more
- * than {@value #MAX_TRIALS}, nothing is done.
+ * than {@value #MAX_TRIALS} keys and no budget is given, the search is limited to
+ * the {@value #MAX_TRIALS} most probable keys.
  *
  * @author tebe
  */
 public class XorAndCompressCrackerApp {
     private static final long MAX_TRIALS = 68719476736L; // 2^36
     private static final int PROGRESS_INTERVAL = 5000; // in ms
-    private static int keylength;
-    private static int depth;
-    private static String filename;
+    private static final String DEPTH_FIRST = "--dfs";
+    private int keylength;
+    private int maxKeylength;
+    private int depth;
+    private String filename;
+    private SearchBudget budget;
+    private boolean depthFirst;
+
+    public XorAndCompressCrackerApp(String filename, int keylength, int depth) {
+        this(filename, keylength, depth, SearchBudget.UNLIMITED);
+    }
+
+    public XorAndCompressCrackerApp(String filename, int keylength, int depth, SearchBudget budget) {
+        this.filename = filename;
+        this.keylength = keylength;
+        this.maxKeylength = keylength;
+        this.depth = depth;
+        this.budget = budget;
+    }
 
     /**
      * Main method of the application.
@@ -38,74 +76,124 @@ public class XorAndCompressCrackerApp {
      * @param args Command line arguments
      */
     public static void main(String[] args) {
-        if (parseCommandLineParameters(args)) {
-            try {
-                run();
-            } catch (IOException e) {
-                System.out.println(e.getMessage());
-            }
-        } else {
-            usage();
-        }
+        System.out.println("available processors: " + CpuQuota.getAvailableProcessors());
+        Optional<XorAndCompressCrackerApp> app = parseCommandLineParametersToApp(args);
+        app.ifPresentOrElse(XorAndCompressCrackerApp::run, XorAndCompressCrackerApp::usage);
     }
 
     private static void usage() {
         System.out
-                .println("Usage: XorAndCompressCrackerApp file keylength depth ");
+                .println("Usage: XorAndCompressCrackerApp [--dfs] file keylength|minkeylength-maxkeylength depth [budget]");
     }
 
     /**
      * Checks and parses the command line arguments.
      *
      * @param args Command line arguments
-     * @return true, if the arguments could be parsed
+     * @return The application, if the arguments could be parsed
      */
-    private static boolean parseCommandLineParameters(String args[]) {
-        System.out.println("available processors: " + Runtime.getRuntime().availableProcessors());
-        if (args.length == 3) {
+    private static Optional<XorAndCompressCrackerApp> parseCommandLineParametersToApp(String args[]) {
+        if (args.length >= 1 && args[0].equals(DEPTH_FIRST)) {
+            Optional<XorAndCompressCrackerApp> app = parseCommandLineParametersToApp(Arrays.copyOfRange(args, 1, args.length));
+            app.ifPresent(a -> a.depthFirst = true);
+            return app;
+        }
+        if (args.length == 3 || args.length == 4) {
             try {
-                filename = args[0];
-                keylength = Integer.parseInt(args[1]);
-                depth = Integer.parseInt(args[2]);
-                return true;
+                String filename = args[0];
+                String[] keylengths = args[1].split("-", 2);
+                int keylength = Integer.parseInt(keylengths[0]);
+                int maxKeylength = keylengths.length == 2 ? Integer.parseInt(keylengths[1]) : keylength;
+                int depth = Integer.parseInt(args[2]);
+                if (maxKeylength < keylength) {
+                    return Optional.empty();
+                }
+                XorAndCompressCrackerApp app = args.length == 4
+                        ? new XorAndCompressCrackerApp(filename, keylength, depth, SearchBudget.parse(args[3]))
+                        : new XorAndCompressCrackerApp(filename, keylength, depth);
+                app.maxKeylength = maxKeylength;
+                return Optional.of(app);
             } catch (NumberFormatException e) {
             }
         }
-        return false;
+        return Optional.empty();
     }
 
     /**
      * Starts and controls the analysis process
-     *
-     * @throws IOException
      */
-    private static void run() throws IOException {
-        XorAndCompressCracker c = new XorAndCompressCracker(filename);
-        printQueryInformation(c);
-        long candidateKeys = c.getNumberOfCandidateKeys(keylength, depth);
-        if (candidateKeys < MAX_TRIALS) {
-            Timer timer = new Timer();
-            timer.schedule(new ProgressTask(c), PROGRESS_INTERVAL, PROGRESS_INTERVAL);
-            int[] key = c.determineKey(keylength, depth);
-            timer.cancel();
+    private void run() {
+        CrackJob job = CrackJob.compressed(filename, keylength, depth);
+        if (maxKeylength > keylength) {
+            job.withKeylengthSweep(maxKeylength);
+        }
+        if (depthFirst) {
+            job.withDepthFirst();
+        }
+        long candidateKeys = job.getNumberOfCandidateKeys();
+        printQueryInformation(candidateKeys);
+        if (!budget.isLimited()) {
+            // Without effect if the search space is smaller; the budget is only reported as exhausted if keys were left
+            budget = SearchBudget.ofTrials(MAX_TRIALS);
+            if (candidateKeys > MAX_TRIALS) {
+                printTooManyCandidateKeys(candidateKeys);
+            }
+        }
+        job.withBudget(budget);
+        ProgressMonitor monitor = new ProgressMonitor(job);
+        monitor.register(filename);
+        job.withProgressListener(p -> {
+            monitor.sample();
+            System.out.println(monitor.toLogLine());
+        }, PROGRESS_INTERVAL);
+        try {
+            int[] key = job.startAndWait();
             printResult(key);
-        } else {
-            printTooManyCandidateKeys(candidateKeys);
+            if (job.isBudgetExhausted()) {
+                printBudgetExhausted(job);
+            }
+            if (maxKeylength > keylength) {
+                printSavedTrials(job);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Cancelled");
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                System.out.println(e.getCause().getCause().getMessage());
+            } else {
+                throw e;
+            }
+        } finally {
+            monitor.unregister();
         }
-
     }
 
-    private static void printTooManyCandidateKeys(long candidateKeys) {
+    private void printTooManyCandidateKeys(long candidateKeys) {
         System.out.println("Too many candidate keys to check: " + candidateKeys
-                + "(Limit: " + MAX_TRIALS + ")");
+                + " (Limit: " + MAX_TRIALS + "). Testing the most probable "
+                + MAX_TRIALS + " keys only.");
+    }
+
+    private void printBudgetExhausted(CrackJob job) {
+        String coverage = new DecimalFormat("#0.00####").format(job.getProgressInPercent());
+        System.out.println("Budget of " + budget + " exhausted after "
+                + (long) job.getProgressAbsolute() + " " + job.getUnit()
+                + " (Coverage: " + coverage + "% of the search space, "
+                + (depthFirst ? "in odometer order)" : "most probable keys first)"));
+    }
 
+    private void printSavedTrials(CrackJob job) {
+        long savedTrials = job.getMetrics().getCounters().getOrDefault(XorAndCompressCracker.SAVED_TRIALS, 0L);
+        System.out.println("Saved trials: " + savedTrials
+                + " (keys repeating with a shorter key length already searched)");
     }
 
-    private static void printQueryInformation(XorAndCompressCracker c) {
+    private void printQueryInformation(long candidateKeys) {
         System.out.println("Analyzing file: " + filename);
-        System.out.println("Number of candidate keys: "
-                + c.getNumberOfCandidateKeys(keylength, depth)
-                + " at key length " + keylength + " and search depth " + depth);
+        System.out.println("Number of candidate keys: " + candidateKeys
+                + " at key length " + (maxKeylength > keylength ? keylength + "-" + maxKeylength : keylength)
+                + " and search depth " + depth);
     }
 
     private static void printResult(int[] key) {
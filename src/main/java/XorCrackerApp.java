@@ -1,12 +1,30 @@
-import ch.zhaw.init.is.crypto.classic.ByteFrequencyTable;
 import ch.zhaw.init.is.crypto.classic.ByteFrequencyTableHelpers;
+import ch.zhaw.init.is.crypto.classic.CrackJob;
+import ch.zhaw.init.is.crypto.classic.FileFollower;
+import ch.zhaw.init.is.crypto.classic.FrequencySampler;
+import ch.zhaw.init.is.crypto.classic.HammingDistanceScorer;
+import ch.zhaw.init.is.crypto.classic.HistogramAggregator;
+import ch.zhaw.init.is.crypto.classic.KeyLengthDetector;
+import ch.zhaw.init.is.crypto.classic.PackedFrequencyTables;
+import ch.zhaw.init.is.crypto.classic.StreamingHistogram;
 import ch.zhaw.init.is.util.HexTools;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Application for cracking the encryption of files that have been
@@ -16,21 +34,62 @@ import java.util.Optional;
  * frequent than other byte values.
  * <p>
  * Usage:<br>
- * <tt>  XorCrackerApp file keylength</tt>
+ * <tt>  XorCrackerApp [--sample] file keylength|auto [mostfrequentcharacter]</tt><br>
+ * <tt>  XorCrackerApp --files listfile keylength [mostfrequentcharacter]</tt><br>
+ * <tt>  XorCrackerApp --follow file keylength [mostfrequentcharacter]</tt>
  * <p>
  * Arguments:<br>
  * <ul>
- * <li>file: The file to be cracked
- * <li>keylength: The length of the key in bytes
+ * <li>--sample: Estimate the byte frequencies of a large file from random samples
+ * and scan the whole file only if the estimate is not confident enough
+ * <li>--files: Recover the key shared by all files listed in the list file
+ * <li>--follow: Follow a growing file and print a new key guess whenever it changes
+ * <li>file: The file to be cracked, or <tt>-</tt> to read from standard input
+ * <li>keylength: The length of the key in bytes, or <tt>auto</tt> to detect it
  * </ul>
  * <p>
+ * With <tt>auto</tt>, the key lengths up to {@value #MAX_DETECTED_KEYLENGTH} are
+ * scored by the mean byte-entropy of their slots ({@link KeyLengthDetector}) and
+ * by the normalized Hamming distance ({@link HammingDistanceScorer}). The best
+ * key lengths by the combination of both scores are printed, and the file is
+ * cracked with the detected one. Not supported for standard input.
+ * <p>
+ * With <tt>--files</tt>, the list file contains one encrypted file per line,
+ * optionally followed by a tab and the phase of the file (the index of the key
+ * byte its first byte was encrypted with, default 0); relative paths are
+ * resolved against the directory of the list file. The byte frequency tables
+ * of all files are aggregated ({@link HistogramAggregator}) and one key is
+ * recovered from the aggregate, which works even if every single file is too
+ * small for a reliable frequency analysis.
+ * <p>
+ * With <tt>--follow</tt>, the file is polled every {@value FileFollower#POLL_INTERVAL} ms
+ * until the application is stopped ({@link FileFollower}). Only the appended bytes
+ * are read, and the key guess and the mean entropy of the slots are printed
+ * whenever the most frequent byte of a slot, and thus the key guess, changes.
+ * <p>
+ * When reading from standard input, the data is analyzed while it is read and
+ * an interim key guess is printed every {@value #INTERIM_INTERVAL} ms. The memory
+ * used does not depend on the length of the input.
+ * <p>
  *
  * @author tebe
  */
 public class XorCrackerApp {
+    private static final String STDIN = "-";
+    private static final String SAMPLE = "--sample";
+    private static final String FILES = "--files";
+    private static final String FOLLOW = "--follow";
+    private static final int INTERIM_INTERVAL = 5000; // in ms
+    private static final String AUTO = "auto";
+    private static final int AUTO_KEYLENGTH = 0;
+    private static final int MAX_DETECTED_KEYLENGTH = 32;
+    private static final int REPORTED_KEYLENGTHS = 5;
     private int keylength;
     private String filename;
     private int mostFrequentCharacter;
+    private boolean sampling;
+    private boolean multipleFiles;
+    private boolean following;
 
     public XorCrackerApp(String filename, int keylength) {
         this(filename, keylength, 'e');
@@ -59,7 +118,9 @@ public class XorCrackerApp {
     }
 
     private static void usage() {
-        System.out.println("Usage: XorCrackerApp file keylength");
+        System.out.println("Usage: XorCrackerApp [--sample] file|- keylength|auto [mostfrequentcharacter]");
+        System.out.println("       XorCrackerApp --files listfile keylength [mostfrequentcharacter]");
+        System.out.println("       XorCrackerApp --follow file keylength [mostfrequentcharacter]");
     }
 
     /**
@@ -69,10 +130,25 @@ public class XorCrackerApp {
      * @return true, if the arguments could be parsed
      */
     private static Optional<XorCrackerApp> parseCommandLineParametersToApp(String args[]) {
+        if (args.length >= 1 && args[0].equals(SAMPLE)) {
+            Optional<XorCrackerApp> app = parseCommandLineParametersToApp(Arrays.copyOfRange(args, 1, args.length));
+            app.ifPresent(a -> a.sampling = true);
+            return app;
+        }
+        if (args.length >= 1 && args[0].equals(FILES)) {
+            Optional<XorCrackerApp> app = parseCommandLineParametersToApp(Arrays.copyOfRange(args, 1, args.length));
+            app.ifPresent(a -> a.multipleFiles = true);
+            return app;
+        }
+        if (args.length >= 1 && args[0].equals(FOLLOW)) {
+            Optional<XorCrackerApp> app = parseCommandLineParametersToApp(Arrays.copyOfRange(args, 1, args.length));
+            app.ifPresent(a -> a.following = true);
+            return app;
+        }
         if (args.length >= 2) {
             try {
                 String filename = args[0];
-                int keylength = Integer.parseInt(args[1]);
+                int keylength = args[1].equals(AUTO) ? AUTO_KEYLENGTH : Integer.parseInt(args[1]);
 
                 if (args.length >= 3) {
                     int mostFrequent = (int) args[2].charAt(0);
@@ -93,38 +169,164 @@ public class XorCrackerApp {
      * @throws IOException
      */
     private void run() throws IOException {
+        if (multipleFiles) {
+            runOnFiles();
+            return;
+        }
+        if (following) {
+            runOnGrowingFile();
+            return;
+        }
+        if (filename.equals(STDIN)) {
+            if (keylength == AUTO_KEYLENGTH) {
+                System.out.println("Key length detection is not supported for standard input");
+                return;
+            }
+            runOnStream();
+            return;
+        }
+        if (keylength == AUTO_KEYLENGTH) {
+            keylength = detectKeyLength(Paths.get(filename));
+        }
         try {
             System.out.println("Number of candidate keys: " + getNumberOfCandidateKeys());
-            int[] key = getCandidateKey(filename, keylength, mostFrequentCharacter);
+            CrackJob job = CrackJob.uncompressed(filename, keylength, mostFrequentCharacter);
+            if (sampling) {
+                job.withSampling();
+            }
+            int[] key = job.startAndWait();
+            if (sampling) {
+                printSamplingEstimate(job.getSamplingEstimate());
+            }
             System.out.println(HexTools.intArrayToHexString(key));
-        } catch (IOException e) {
-            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Cancelled");
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
         }
     }
 
-    private static int getNumberOfCandidateKeys() {
-        return 1;
+    /**
+     * Prints the confidence of every slot and whether the whole file had to be scanned.
+     *
+     * @param estimate The estimate of the byte frequency tables
+     */
+    private static void printSamplingEstimate(FrequencySampler.Estimate estimate) {
+        double[] confidence = estimate.getConfidence();
+        for (int slot = 0; slot < confidence.length; slot++) {
+            System.out.println(String.format("Confidence of slot %d: %.4f", slot, confidence[slot]));
+        }
+        System.out.println((estimate.isFullScan() ? "Full scan after " : "No full scan, sampled ")
+                + estimate.getBytesRead() + " bytes");
+    }
+
+    /**
+     * Analyzes standard input while it is read, printing interim key guesses.
+     *
+     * @throws IOException
+     */
+    private void runOnStream() throws IOException {
+        StreamingHistogram histogram = new StreamingHistogram(keylength);
+        histogram.process(System.in, INTERIM_INTERVAL, h -> System.out.println("Interim key after "
+                + h.getBytesProcessed() + " bytes: " + HexTools.intArrayToHexString(getKey(h))));
+        System.out.println(HexTools.intArrayToHexString(getKey(histogram)));
     }
 
+    /**
+     * Follows the growing file, printing the key guess whenever it changes.
+     *
+     * @throws IOException
+     */
+    private void runOnGrowingFile() throws IOException {
+        if (keylength == AUTO_KEYLENGTH || filename.equals(STDIN)) {
+            System.out.println("Following requires a file and a key length");
+            return;
+        }
+        new FileFollower(Paths.get(filename), keylength).follow(f -> System.out.println("Key after "
+                + f.getHistogram().getBytesProcessed() + " bytes: " + HexTools.intArrayToHexString(getKey(f.getHistogram()))
+                + " (mean entropy " + f.getMeanByteEntropy() + ")"), () -> false);
+    }
 
     /**
-     * Determines the key assuming the specified most frequent byte is the most frequent
-     * byte in the plaintext and keylength is the true length of the key.
+     * Recovers the key shared by the files of the list from their aggregated frequency tables.
      *
-     * @param filename          The name of the file to process
-     * @param keylength         The key length in bytes
-     * @param mostFrequentValue The assumed most frequent byte in the plaintext
-     * @return The key
      * @throws IOException
      */
-    private static int[] getCandidateKey(String filename, int keylength, int mostFrequentValue) throws IOException {
-        DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)));
-        ByteFrequencyTable[] frequencyTable = ByteFrequencyTableHelpers.getFrequencyTableForKeyLength(keylength, inputStream);
-        int[] key = new int[keylength];
-        for (int i = 0; i < keylength; i++) {
-            int maxHx = frequencyTable[i].getMostFrequentByte();
-            key[i] = maxHx ^ mostFrequentValue;
+    private void runOnFiles() throws IOException {
+        if (keylength == AUTO_KEYLENGTH) {
+            System.out.println("Key length detection is not supported for multiple files");
+            return;
+        }
+        Path list = Paths.get(filename);
+        Path directory = list.toAbsolutePath().getParent();
+        List<HistogramAggregator.Input> inputs = new ArrayList<>();
+        for (String line : Files.readAllLines(list)) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\t");
+            Path file = directory.resolve(fields[0].trim());
+            try {
+                inputs.add(fields.length > 1
+                        ? new HistogramAggregator.Input(file, Integer.parseInt(fields[1].trim()) % keylength)
+                        : new HistogramAggregator.Input(file));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid phase in line: " + line);
+                return;
+            }
         }
-        return key;
+        HistogramAggregator aggregator = new HistogramAggregator(keylength);
+        PackedFrequencyTables tables = aggregator.aggregate(inputs);
+        System.out.println("Aggregated " + aggregator.getBytesRead() + " bytes of "
+                + aggregator.getFilesRead() + " files");
+        System.out.println(HexTools.intArrayToHexString(
+                ByteFrequencyTableHelpers.getCandidateKey(tables.getTables(), mostFrequentCharacter)));
+    }
+
+    /**
+     * Scores the key lengths of the file, prints the best ones and returns the detected one.
+     *
+     * @throws IOException
+     */
+    private static int detectKeyLength(Path file) throws IOException {
+        int maxKeylength = (int) Math.max(1, Math.min(MAX_DETECTED_KEYLENGTH, Files.size(file) / 2));
+        double[] hamming = new HammingDistanceScorer(maxKeylength).getScores(file);
+        double[] entropy = KeyLengthDetector.getScores(readPrefix(file, HammingDistanceScorer.MAX_COMPARED_BYTES),
+                maxKeylength);
+        double[] combined = KeyLengthDetector.combineScores(entropy, hamming);
+        int detected = KeyLengthDetector.getKeyLength(combined);
+
+        Set<Integer> reported = IntStream.rangeClosed(1, maxKeylength).boxed()
+                .sorted(Comparator.comparingDouble(k -> combined[k]))
+                .limit(REPORTED_KEYLENGTHS)
+                .collect(Collectors.toCollection(TreeSet::new));
+        reported.add(detected);
+        System.out.println("Key length scores (lower is better):");
+        System.out.println(" length  entropy  hamming combined");
+        for (int k : reported) {
+            System.out.println(String.format("%7d %8.4f %8.4f %8.4f", k, entropy[k], hamming[k], combined[k]));
+        }
+        System.out.println("Detected key length: " + detected);
+        return detected;
+    }
+
+    private static byte[] readPrefix(Path file, int maxLength) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] prefix = new byte[(int) Math.min(maxLength, Files.size(file))];
+            int length = in.readNBytes(prefix, 0, prefix.length);
+            return Arrays.copyOf(prefix, length);
+        }
+    }
+
+    private int[] getKey(StreamingHistogram histogram) {
+        return ByteFrequencyTableHelpers.getCandidateKey(histogram.getFrequencyTables(), mostFrequentCharacter);
+    }
+
+    private static int getNumberOfCandidateKeys() {
+        return 1;
     }
 }
@@ -0,0 +1,291 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import ch.zhaw.init.is.util.Metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+
+/**
+ * This class implements the parallel test of the candidate keys of a
+ * {@link KeyGenerator}, with a batch size and a number of active workers that
+ * are tuned while the search runs.
+ * <p>
+ * The cost of a trial varies by orders of magnitude: a key rejected by the local
+ * file header costs some nanoseconds, a key that has to be inflated some
+ * milliseconds. The workers take batches of keys from the generator, which is
+ * used by one worker at a time, and test them. They measure the time waiting for
+ * the generator, the time generating and the time testing. Every
+ * {@value #RETUNE_INTERVAL_NANOS} ns, the settings are recomputed from these
+ * measurements:
+ * <ul>
+ * <li>The batch size is chosen such that a batch takes about
+ * {@value #TARGET_BATCH_NANOS} ns. The fixed cost of taking a batch is then
+ * negligible, while a stop (key found, budget exhausted, cancelled) is noticed
+ * quickly and the workers finish at about the same time.
+ * <li>The generator can feed (generation + test time) / generation time workers
+ * per key; more workers would only queue for it. Beyond that, a worker is
+ * deactivated while the workers spend more than {@value #OVERHEAD_TARGET} of
+ * their time waiting for the generator, and activated again when they spend
+ * less than half of it.
+ * </ul>
+ * The chosen settings are published in the gauges
+ * {@value XorAndCompressCracker#WORKERS}, {@value XorAndCompressCracker#BATCH_SIZE}
+ * and {@value XorAndCompressCracker#TRIAL_NANOS} (the mean test time per key).
+ * <p>
+ * The keys are tested concurrently, but the result is the same as that of a
+ * sequential search: the first valid key in the order of the generator. The
+ * batches are numbered in the order they are taken from the generator. A key
+ * found in a batch stops the batches after it and the generation of further
+ * batches, while the batches before it are tested to the end, since they may
+ * contain an earlier valid key. The key of the lowest batch wins.
+ */
+class AdaptiveKeySearch {
+    static final long RETUNE_INTERVAL_NANOS = 20000000;
+    static final long TARGET_BATCH_NANOS = 1000000;
+    static final int MAX_BATCH_SIZE = 1 << 16;
+    static final double OVERHEAD_TARGET = 0.05;
+    private static final long IDLE_NANOS = 1000000;
+
+    private final KeyGenerator keyGenerator;
+    private final int maxWorkers;
+    private final AtomicLong workersMetric;
+    private final AtomicLong batchSizeMetric;
+    private final AtomicLong trialNanosMetric;
+    private volatile boolean stopped;
+    private volatile boolean exhausted;
+    private volatile int activeWorkers;
+    private volatile long keySequence = Long.MAX_VALUE;
+    // Guarded by this
+    private int[] key;
+    private Throwable failure;
+    private long batches;
+    private int batchSize = 1;
+    private boolean tuned;
+    private long generated;
+    private long lastRetune;
+    private long waitNanos;
+    private long generationNanos;
+    private long testNanos;
+    private long generatedSinceRetune;
+    private long testedSinceRetune;
+
+    /**
+     * Constructor.
+     *
+     * @param keyGenerator The generator of the candidate keys
+     * @param maxWorkers   The maximum number of workers
+     * @param metrics      Receives the chosen settings
+     */
+    AdaptiveKeySearch(KeyGenerator keyGenerator, int maxWorkers, Metrics metrics) {
+        this.keyGenerator = keyGenerator;
+        this.maxWorkers = maxWorkers;
+        this.activeWorkers = maxWorkers;
+        this.workersMetric = metrics.gauge(XorAndCompressCracker.WORKERS);
+        this.batchSizeMetric = metrics.gauge(XorAndCompressCracker.BATCH_SIZE);
+        this.trialNanosMetric = metrics.gauge(XorAndCompressCracker.TRIAL_NANOS);
+        workersMetric.set(maxWorkers);
+        batchSizeMetric.set(batchSize);
+    }
+
+    /**
+     * Tests the keys until a key passes the validator, the generator is
+     * exhausted or the stop condition holds.
+     *
+     * @param validator Tests a key
+     * @param stop      Stop condition, tested with the number of keys generated
+     *                  so far before each further key is tested; not tested once
+     *                  the generator is exhausted
+     * @return The first valid key in the order of the generator or null, if none was found
+     * @throws CompletionException if the validator or the generator failed, with the cause of the failure
+     */
+    int[] search(Predicate<int[]> validator, LongPredicate stop) {
+        lastRetune = System.nanoTime();
+        if (maxWorkers == 1) {
+            try {
+                work(0, validator, stop);
+            } catch (RuntimeException | Error e) {
+                throw new CompletionException(e);
+            }
+            return getKey();
+        }
+        ForkJoinPool pool = new ForkJoinPool(maxWorkers);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int index = 0; index < maxWorkers; index++) {
+                int worker = index;
+                workers.add(pool.submit(() -> work(worker, validator, stop)));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            stopped = true;
+            awaitWorkers(pool);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            awaitWorkers(pool);
+            // The exception of the future is a copy made for this thread
+            throw new CompletionException(getFailure());
+        } finally {
+            pool.shutdown();
+        }
+        return getKey();
+    }
+
+    private synchronized int[] getKey() {
+        return key;
+    }
+
+    private synchronized Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Waits for the stopped workers to finish their current trial, so that no
+     * worker uses the validator after the search has returned.
+     */
+    private static void awaitWorkers(ForkJoinPool pool) {
+        pool.shutdown();
+        while (!pool.isTerminated()) {
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                // Interrupted again; the caller restores the interrupt
+            }
+        }
+    }
+
+    private void work(int index, Predicate<int[]> validator, LongPredicate stop) {
+        try {
+            doWork(index, validator, stop);
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            // Stops the other workers
+            stopped = true;
+            throw e;
+        }
+    }
+
+    private void doWork(int index, Predicate<int[]> validator, LongPredicate stop) {
+        long tested = 0;
+        long testTime = 0;
+        // A batch taken after a key has been found would only contain later keys
+        while (!stopped && !exhausted && keySequence == Long.MAX_VALUE) {
+            if (index >= activeWorkers) {
+                LockSupport.parkNanos(IDLE_NANOS);
+                continue;
+            }
+            int[][] batch;
+            long sequence;
+            long waitStart = System.nanoTime();
+            synchronized (this) {
+                long start = System.nanoTime();
+                waitNanos += start - waitStart;
+                testNanos += testTime;
+                testedSinceRetune += tested;
+                if (start - lastRetune >= RETUNE_INTERVAL_NANOS || !tuned) {
+                    retune(start);
+                }
+                batch = nextBatch(stop);
+                sequence = batches++;
+                generationNanos += System.nanoTime() - start;
+            }
+            if (batch.length == 0) {
+                // The other workers finish their batches
+                exhausted = true;
+                return;
+            }
+            long testStart = System.nanoTime();
+            tested = 0;
+            for (int[] candidate : batch) {
+                if (stopped || keySequence < sequence) {
+                    break;
+                }
+                tested++;
+                if (validator.test(candidate)) {
+                    found(candidate, sequence);
+                    break;
+                }
+            }
+            testTime = System.nanoTime() - testStart;
+        }
+    }
+
+    /**
+     * Keeps the key, unless a key has been found in an earlier batch.
+     */
+    private synchronized void found(int[] candidate, long sequence) {
+        if (sequence < keySequence) {
+            key = candidate;
+            keySequence = sequence;
+        }
+    }
+
+    /**
+     * Generates up to batchSize keys; fewer if the generator is exhausted or the stop condition holds.
+     * The stop condition is only tested if there is a further key, so that a budget of exactly
+     * the number of keys is not reported as exhausted.
+     */
+    private int[][] nextBatch(LongPredicate stop) {
+        int[][] batch = new int[batchSize][];
+        int size = 0;
+        while (size < batchSize) {
+            int[] candidate = keyGenerator.getNextCandidateKey();
+            if (candidate == null || stop.test(generated)) {
+                break;
+            }
+            batch[size++] = candidate;
+            generated++;
+            generatedSinceRetune++;
+        }
+        return size == batchSize ? batch : Arrays.copyOf(batch, size);
+    }
+
+    /**
+     * Recomputes the batch size and the number of active workers from the
+     * measurements since the last call.
+     */
+    private void retune(long now) {
+        if (testedSinceRetune > 0 && generatedSinceRetune > 0) {
+            double trialNanos = testNanos / (double) testedSinceRetune;
+            double generationPerKey = generationNanos / (double) generatedSinceRetune;
+            double perKey = Math.max(1, trialNanos + generationPerKey);
+            batchSize = (int) Math.max(1, Math.min(MAX_BATCH_SIZE, TARGET_BATCH_NANOS / perKey));
+
+            int fed = (int) Math.max(1, Math.min(maxWorkers, perKey / Math.max(1, generationPerKey)));
+            double waitShare = waitNanos / (double) (waitNanos + generationNanos + testNanos);
+            int workers = activeWorkers;
+            if (waitShare > OVERHEAD_TARGET) {
+                workers--;
+            } else if (waitShare < OVERHEAD_TARGET / 2) {
+                workers++;
+            }
+            activeWorkers = Math.max(1, Math.min(fed, workers));
+
+            workersMetric.set(activeWorkers);
+            batchSizeMetric.set(batchSize);
+            trialNanosMetric.set(Math.round(trialNanos));
+            waitNanos = 0;
+            generationNanos = 0;
+            testNanos = 0;
+            generatedSinceRetune = 0;
+            testedSinceRetune = 0;
+            tuned = true;
+        }
+        lastRetune = now;
+    }
+}
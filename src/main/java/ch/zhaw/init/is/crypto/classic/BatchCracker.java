@@ -0,0 +1,233 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import ch.zhaw.init.is.util.FileIngestor;
+import ch.zhaw.init.is.util.HexTools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class implements the cracking of many files encrypted with the XOR
+ * method after they have been compressed with ZIP.
+ * <p>
+ * Each file goes through two stages: the analysis (byte frequency tables and
+ * key length detection with {@link KeyLengthDetector}) and the key search with
+ * {@link XorAndCompressCracker}. The stages of all files are scheduled on one
+ * shared pool, cheapest first: the cost of an analysis is the file size, the
+ * cost of a key search is the file size times the number of candidate keys.
+ * Thus, all quick analyses and small searches are done before expensive
+ * searches are started, and their results are reported as soon as they are
+ * available.
+ * <p>
+ * The files are read by a {@link FileIngestor}, one I/O thread per file, so that
+ * the workers of the shared pool never wait for the disk. A file is read once;
+ * its content is passed from the analysis to the key search. The I/O concurrency
+ * limits the number of files in progress (read, analyzed or waiting for their
+ * key search), and thus the memory used by file contents.
+ */
+public class BatchCracker {
+    private final int maxKeylength;
+    private final int depth;
+    private final SearchBudget budget;
+    private final ThreadPoolExecutor pool;
+    private final int ioConcurrency;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * The result of cracking one file.
+     */
+    public static class Result {
+        /**
+         * Outcome of the key search.
+         */
+        public enum Status {FOUND, NOT_FOUND, BUDGET_EXHAUSTED, ERROR}
+
+        private final Path file;
+        private final Status status;
+        private final int keylength;
+        private final int[] key;
+        private final String message;
+
+        Result(Path file, Status status, int keylength, int[] key, String message) {
+            this.file = file;
+            this.status = status;
+            this.keylength = keylength;
+            this.key = key;
+            this.message = message;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return The detected key length (0, if not determined)
+         */
+        public int getKeylength() {
+            return keylength;
+        }
+
+        /**
+         * @return The key or null, if none was found
+         */
+        public int[] getKey() {
+            return key;
+        }
+
+        /**
+         * @return The error message or null
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return file + "\t" + status + "\t" + keylength + "\t"
+                    + (key != null ? HexTools.intArrayToHexString(key).trim() : "-")
+                    + (message != null ? "\t" + message : "");
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param threads       The number of threads of the shared pool
+     * @param ioConcurrency The maximum number of files read or analyzed at the same time
+     * @param maxKeylength  The maximum key length considered by the key length detection
+     * @param depth         The search depth (top 'depth' most frequent bytes per key byte)
+     * @param budget        The budget of the key search per file
+     */
+    public BatchCracker(int threads, int ioConcurrency, int maxKeylength, int depth, SearchBudget budget) {
+        this.ioConcurrency = ioConcurrency;
+        this.maxKeylength = maxKeylength;
+        this.depth = depth;
+        this.budget = budget;
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>());
+    }
+
+    /**
+     * Cracks all regular files in the directory and its subdirectories.
+     * Blocks until all files have been processed.
+     *
+     * @param directory The directory
+     * @param results   Receives the result of each file as soon as it is available.
+     *                  It is called from the threads of the pool.
+     * @throws IOException          if the directory cannot be read
+     * @throws InterruptedException if interrupted while waiting for the results
+     */
+    public void crack(Path directory, Consumer<Result> results) throws IOException, InterruptedException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        CountDownLatch done = new CountDownLatch(files.size());
+        Consumer<Result> report = result -> {
+            try {
+                results.accept(result);
+            } finally {
+                done.countDown();
+            }
+        };
+        try (FileIngestor ingestor = new FileIngestor(ioConcurrency)) {
+            for (Path file : files) {
+                ingestor.ingest(file, data -> {
+                    // The content is needed until the result of the file has been reported
+                    CompletableFuture<Void> finished = new CompletableFuture<>();
+                    schedule(data.length, () -> analyze(file, data, result -> {
+                        try {
+                            report.accept(result);
+                        } finally {
+                            finished.complete(null);
+                        }
+                    }));
+                    return finished;
+                }).exceptionally(e -> {
+                    report.accept(new Result(file, Result.Status.ERROR, 0, null, e.getCause() != null
+                            ? e.getCause().toString() : e.toString()));
+                    return null;
+                });
+            }
+            done.await();
+        }
+    }
+
+    /**
+     * Shuts the shared pool down.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private void analyze(Path file, byte[] data, Consumer<Result> report) {
+        try {
+            int keylength = KeyLengthDetector.detectKeyLength(data, Math.min(maxKeylength, Math.max(1, data.length)));
+            ByteFrequencyTable[] frequencyTable = ByteFrequencyTableHelpers.getFrequencyTableForKeyLength(keylength, data);
+            long candidates = Math.min(budget.getMaxTrials(), new KeyGenerator(frequencyTable, depth, 0,
+                    KeyGenerator.Order.BEST_FIRST, KnownPlaintext.zipLocalHeader(), data).getNumberOfKeys());
+            long cost = candidates > Long.MAX_VALUE / Math.max(1, data.length) ? Long.MAX_VALUE : candidates * data.length;
+            schedule(cost, () -> search(file, data, frequencyTable, report));
+        } catch (RuntimeException e) {
+            report.accept(new Result(file, Result.Status.ERROR, 0, null, e.toString()));
+        }
+    }
+
+    private void search(Path file, byte[] data, ByteFrequencyTable[] frequencyTable, Consumer<Result> report) {
+        try {
+            XorAndCompressCracker cracker = new XorAndCompressCracker(EncryptedZipFile.create(data));
+            cracker.setParallelism(1);
+            int[] key = cracker.determineKey(frequencyTable, depth, budget);
+            Result.Status status = key != null ? Result.Status.FOUND
+                    : cracker.isBudgetExhausted() ? Result.Status.BUDGET_EXHAUSTED : Result.Status.NOT_FOUND;
+            report.accept(new Result(file, status, frequencyTable.length, key, null));
+        } catch (RuntimeException e) {
+            report.accept(new Result(file, Result.Status.ERROR, frequencyTable.length, null, e.toString()));
+        }
+    }
+
+    private void schedule(long cost, Runnable stage) {
+        pool.execute(new Stage(cost, sequence.getAndIncrement(), stage));
+    }
+
+    /**
+     * A stage of the processing of a file, ordered by cost and then by submission.
+     */
+    private static class Stage implements Runnable, Comparable<Stage> {
+        private final long cost;
+        private final long sequence;
+        private final Runnable stage;
+
+        Stage(long cost, long sequence, Runnable stage) {
+            this.cost = cost;
+            this.sequence = sequence;
+            this.stage = stage;
+        }
+
+        @Override
+        public void run() {
+            stage.run();
+        }
+
+        @Override
+        public int compareTo(Stage other) {
+            int result = Long.compare(cost, other.cost);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+}
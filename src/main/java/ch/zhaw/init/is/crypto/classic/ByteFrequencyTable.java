@@ -1,6 +1,6 @@
 package ch.zhaw.init.is.crypto.classic;
 
-import java.util.*;
+import java.util.Arrays;
 
 
 /**
@@ -9,12 +9,31 @@ import java.util.*;
  * For the different byte values, it counts the number of
  * times they were added and provides functionality to
  * retreive the most frequent of them.
+ * <p>
+ * A table either owns its counts or is a view of one slot of
+ * {@link PackedFrequencyTables}.
  *
  * @author tebe
  */
 public class ByteFrequencyTable {
     public static final int BYTE_VALUES = 256;
-    private int[] frequency = new int[BYTE_VALUES];
+    private long[] frequency;
+    private int offset;
+
+    public ByteFrequencyTable() {
+        this(new long[BYTE_VALUES], 0);
+    }
+
+    /**
+     * Constructor for a table whose counts are stored in a shared array.
+     *
+     * @param frequency The array containing the counts
+     * @param offset    The index of the count of byte value 0 in the array
+     */
+    ByteFrequencyTable(long[] frequency, int offset) {
+        this.frequency = frequency;
+        this.offset = offset;
+    }
 
     /**
      * Increment the count of the byte with this value by one.
@@ -22,7 +41,7 @@ public class ByteFrequencyTable {
      * @param value the byte value
      */
     public void addByte(int value) {
-        frequency[value]++;
+        frequency[offset + value]++;
     }
 
     /**
@@ -35,33 +54,28 @@ public class ByteFrequencyTable {
         if (number < 1 || number > BYTE_VALUES) {
             throw new IllegalArgumentException("Number of bytes must be in 1.." + BYTE_VALUES);
         }
-        HashMap<Integer, Integer> frequencyLookup;
-        List<Map.Entry<Integer, Integer>> entries;
-
-        frequencyLookup = buildByteFrequencyMap();
-        entries = getListOfMapEntriesSortedAccordingToValue(frequencyLookup);
-        return getMostFrequentBytes(number, entries);
+        return PackedFrequencyTables.getMostFrequentBytes(frequency, offset, number);
     }
 
     /**
      * Calculates the byte-entropy of this sample byte frequency distribution
+     * (within {@link PackedFrequencyTables#ENTROPY_EPSILON}).
      *
      * @return The byte-entropy
      */
     public double getByteEntropy() {
-        int totalOccurences = 0;
-        for (int i = 0; i < frequency.length; i++) {
-            totalOccurences += frequency[i];
-        }
-        double sampleProbabilitySum = 0;
-        double sampleProbability = 0;
-        for (int i = 0; i < frequency.length; i++) {
-            if (frequency[i] > 0) {
-                sampleProbability = frequency[i] / (double) totalOccurences;
-                sampleProbabilitySum += sampleProbability * Math.log(sampleProbability);
-            }
-        }
-        return -1 / Math.log(BYTE_VALUES) * sampleProbabilitySum;
+        return PackedFrequencyTables.getByteEntropy(frequency, offset);
+    }
+
+    /**
+     * Calculates the index of coincidence of this sample byte frequency
+     * distribution, i.e., the probability that two bytes drawn without
+     * replacement have the same value.
+     *
+     * @return The index of coincidence
+     */
+    public double getIndexOfCoincidence() {
+        return PackedFrequencyTables.getIndexOfCoincidence(frequency, offset);
     }
 
     /**
@@ -70,42 +84,21 @@ public class ByteFrequencyTable {
      * @return the most frequent byte
      */
     public int getMostFrequentByte() {
-        int[] mostFrequentByte = getMostFrequentBytes(1);
-        return mostFrequentByte[0];
+        return PackedFrequencyTables.getMostFrequentByte(frequency, offset);
     }
 
-    private HashMap<Integer, Integer> buildByteFrequencyMap() {
-        HashMap<Integer, Integer> frequencyLookup = new HashMap<Integer, Integer>();
-        for (int value = 0; value < frequency.length; value++) {
-            frequencyLookup.put(value, frequency[value]);
-        }
-        return frequencyLookup;
-    }
-
-    private List<Map.Entry<Integer, Integer>> getListOfMapEntriesSortedAccordingToValue(
-            HashMap<Integer, Integer> frequencyLookup) {
-        List<Map.Entry<Integer, Integer>> entries = new ArrayList<Map.Entry<Integer, Integer>>();
-        entries.addAll(frequencyLookup.entrySet());
-        Collections.sort(entries, new Comparator<Map.Entry<Integer, Integer>>() {
-            public int compare(
-                    Map.Entry<Integer, Integer> entry1, Map.Entry<Integer, Integer> entry2) {
-                return entry2.getValue().compareTo(entry1.getValue());
-            }
-        });
-        return entries;
+    /**
+     * @param value The byte value
+     * @return The count of the byte value
+     */
+    public long getCount(int value) {
+        return frequency[offset + value];
     }
 
-    private int[] getMostFrequentBytes(int number,
-                                       List<Map.Entry<Integer, Integer>> entries) {
-        number = Math.min(entries.size(), number);
-        int[] mostFrequentBytes = new int[number];
-        for (int i = 0; i < number; i++) {
-            mostFrequentBytes[i] = entries.get(i).getKey();
+    long[] getTable() {
+        if (offset == 0 && frequency.length == BYTE_VALUES) {
+            return frequency;
         }
-        return mostFrequentBytes;
-    }
-
-    int[] getTable() {
-        return frequency;
+        return Arrays.copyOfRange(frequency, offset, offset + BYTE_VALUES);
     }
 }
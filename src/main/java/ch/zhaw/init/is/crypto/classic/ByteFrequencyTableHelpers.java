@@ -5,11 +5,14 @@ import java.io.IOException;
 
 /**
  * This class implements some helper methods related to
- * the construction of {ByteFrequencyTable}s.
+ * the construction of {ByteFrequencyTable}s. The tables are
+ * views of {@link PackedFrequencyTables}.
  *
  * @author tebe
  */
 public class ByteFrequencyTableHelpers {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     /**
      * Creates the {@link ByteFrequencyTable}s of the input data for the
      * different key bytes. The resulting array has keylength
@@ -22,22 +25,51 @@ public class ByteFrequencyTableHelpers {
      */
     public static ByteFrequencyTable[] getFrequencyTableForKeyLength(int keylength,
                                                                      DataInputStream inputStream) throws IOException {
-        ByteFrequencyTable[] frequencyTable = new ByteFrequencyTable[keylength];
+        PackedFrequencyTables frequencyTable = new PackedFrequencyTables(keylength);
         try {
-
-            for (int i = 0; i < frequencyTable.length; i++) {
-                frequencyTable[i] = new ByteFrequencyTable();
-            }
-            int value = 0;
-            int keyIndex = 0;
-            while ((value = inputStream.read()) != -1) {
-                frequencyTable[keyIndex].addByte(value);
-                keyIndex = (keyIndex + 1) % keylength;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long position = 0;
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                frequencyTable.addBytes(buffer, 0, read, position);
+                position += read;
             }
         } finally {
             if (inputStream != null)
                 inputStream.close();
         }
-        return frequencyTable;
+        return frequencyTable.getTables();
+    }
+
+    /**
+     * Creates the {@link ByteFrequencyTable}s of the input data for the
+     * different key bytes. Same as {@link #getFrequencyTableForKeyLength(int, DataInputStream)},
+     * but for data in memory.
+     *
+     * @param keylength The length of the key in bytes
+     * @param data      The data
+     * @return The byte frequency tables
+     */
+    public static ByteFrequencyTable[] getFrequencyTableForKeyLength(int keylength, byte[] data) {
+        PackedFrequencyTables frequencyTable = new PackedFrequencyTables(keylength);
+        frequencyTable.addBytes(data, 0, data.length, 0);
+        return frequencyTable.getTables();
+    }
+
+    /**
+     * Determines the key assuming the specified value is the most frequent
+     * byte in the plaintext, i.e., that the most frequent byte of each table
+     * is this value XOR-ed with the corresponding key byte.
+     *
+     * @param frequencyTable    The byte frequency tables, one per key byte
+     * @param mostFrequentValue The assumed most frequent byte in the plaintext
+     * @return The key
+     */
+    public static int[] getCandidateKey(ByteFrequencyTable[] frequencyTable, int mostFrequentValue) {
+        int[] key = new int[frequencyTable.length];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = frequencyTable[i].getMostFrequentByte() ^ mostFrequentValue;
+        }
+        return key;
     }
 }
@@ -2,19 +2,58 @@ package ch.zhaw.init.is.crypto.classic;
 
 import org.math.plot.Plot2DPanel;
 
+import javax.imageio.ImageIO;
 import javax.swing.*;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * This class implements a view of one or multiple {@link ByteFrequencyTable}s.
  * It creates Histogram plots using the jmathplot Library
  * {@link https://code.google.com/p/jmathplot/}.
+ * <p>
+ * Without a display (e.g., on a server), {@link #writeImages} renders the
+ * tables into PNG or SVG files instead: the tables are arranged in a grid of
+ * {@value #COLUMNS} columns, with at most {@value #TABLES_PER_PAGE} tables per
+ * file (page). The bars are drawn straight from the integer counts, one pixel
+ * column per bin; with a bin width greater than 1, adjacent byte values are
+ * summed into one bin, which makes the images of many tables smaller. The
+ * pages, and the tables within a page, are rendered in parallel.
  *
  * @author tebe
  */
 public class ByteFrequencyTableView {
+    /**
+     * Output format of {@link #writeImages}.
+     */
+    public enum Format {PNG, SVG}
+
     private static final int X_SIZE = 800;
     private static final int Y_SIZE = 600;
+    private static final int COLUMNS = 8;
+    private static final int TABLES_PER_PAGE = 64;
+    private static final int PLOT_HEIGHT = 96;
+    private static final int LABEL_HEIGHT = 14;
+    private static final int MARGIN = 6;
+    private static final int BACKGROUND = 0xFFFFFF;
+    private static final int FRAME = 0xC0C0C0;
+    private static final int BAR = 0x3060A0;
     private ByteFrequencyTable[] table;
+    private int tablesPerPage = TABLES_PER_PAGE;
+    private int binWidth = 1;
 
     /**
      * Constructor to create a view of a single {ByteFrequencyTable}.
@@ -35,6 +74,31 @@ public class ByteFrequencyTableView {
         this.table = table;
     }
 
+    /**
+     * @param tablesPerPage The maximum number of tables per image file
+     * @return This view
+     */
+    public ByteFrequencyTableView withTablesPerPage(int tablesPerPage) {
+        if (tablesPerPage < 1) {
+            throw new IllegalArgumentException("Tables per page must be at least 1");
+        }
+        this.tablesPerPage = tablesPerPage;
+        return this;
+    }
+
+    /**
+     * @param binWidth The number of adjacent byte values summed into one bar;
+     *                 a power of 2 up to {@value ByteFrequencyTable#BYTE_VALUES}
+     * @return This view
+     */
+    public ByteFrequencyTableView withBinWidth(int binWidth) {
+        if (binWidth < 1 || binWidth > ByteFrequencyTable.BYTE_VALUES || Integer.bitCount(binWidth) != 1) {
+            throw new IllegalArgumentException("Bin width must be a power of 2 up to " + ByteFrequencyTable.BYTE_VALUES);
+        }
+        this.binWidth = binWidth;
+        return this;
+    }
+
     /**
      * Displays the histogram plot(s).
      */
@@ -52,7 +116,7 @@ public class ByteFrequencyTableView {
             Plot2DPanel plot = new Plot2DPanel();
             plot.getAxis(0).setLegend("Byte");
             plot.getAxis(1).setLegend("# of occurences");
-            double[] convertedData = convertIntToDoubleArray(t.getTable());
+            double[] convertedData = convertLongToDoubleArray(t.getTable());
             plot.addBarPlot("Table " + index, xAxis, convertedData);
             plot.setFixedBounds(0, 0, ByteFrequencyTable.BYTE_VALUES);
             container.add(plot);
@@ -62,7 +126,143 @@ public class ByteFrequencyTableView {
         frame.setVisible(true);
     }
 
-    private double[] convertIntToDoubleArray(int[] data) {
+    /**
+     * Renders the histograms into image files without a display. The files are
+     * named <tt>name-1.png</tt>, <tt>name-2.png</tt>, ... (or <tt>.svg</tt>), one per page.
+     *
+     * @param directory The directory of the files; it must exist
+     * @param name      The common name of the files
+     * @param format    The format of the files
+     * @return The files written
+     * @throws IOException if a file cannot be written
+     */
+    public List<Path> writeImages(Path directory, String name, Format format) throws IOException {
+        int pages = (table.length + tablesPerPage - 1) / tablesPerPage;
+        List<Path> files = new ArrayList<>();
+        for (int page = 0; page < pages; page++) {
+            files.add(directory.resolve(name + "-" + (page + 1) + "." + format.name().toLowerCase()));
+        }
+        try {
+            IntStream.range(0, pages).parallel().forEach(page -> {
+                try {
+                    if (format == Format.PNG) {
+                        ImageIO.write(renderPng(page), "png", files.get(page).toFile());
+                    } else {
+                        Files.write(files.get(page), renderSvg(page).getBytes(StandardCharsets.UTF_8));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return files;
+    }
+
+    private int getBins() {
+        return ByteFrequencyTable.BYTE_VALUES / binWidth;
+    }
+
+    private int getCellWidth() {
+        return getBins() + 2 * MARGIN;
+    }
+
+    private int getCellHeight() {
+        return LABEL_HEIGHT + PLOT_HEIGHT + MARGIN;
+    }
+
+    private int getTablesOnPage(int page) {
+        return Math.min(tablesPerPage, table.length - page * tablesPerPage);
+    }
+
+    /**
+     * Sums the counts of the table into bins.
+     */
+    private long[] getBinCounts(ByteFrequencyTable t) {
+        long[] bins = new long[getBins()];
+        for (int value = 0; value < ByteFrequencyTable.BYTE_VALUES; value++) {
+            bins[value / binWidth] += t.getCount(value);
+        }
+        return bins;
+    }
+
+    /**
+     * @return The height of the bar in pixels, scaled to the largest bin in integer arithmetic
+     */
+    private static int getBarHeight(long count, long max) {
+        return max == 0 ? 0 : (int) (count * PLOT_HEIGHT / max);
+    }
+
+    private BufferedImage renderPng(int page) {
+        int tables = getTablesOnPage(page);
+        int columns = Math.min(COLUMNS, tables);
+        int rows = (tables + columns - 1) / columns;
+        int width = columns * getCellWidth();
+        BufferedImage image = new BufferedImage(width, rows * getCellHeight(), BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        Arrays.fill(pixels, BACKGROUND);
+        // The cells do not overlap, so their pixels can be written in parallel
+        IntStream.range(0, tables).parallel().forEach(i -> {
+            int x0 = (i % columns) * getCellWidth() + MARGIN;
+            int y0 = (i / columns) * getCellHeight() + LABEL_HEIGHT;
+            long[] bins = getBinCounts(table[page * tablesPerPage + i]);
+            long max = Arrays.stream(bins).max().orElse(0);
+            for (int bin = 0; bin < bins.length; bin++) {
+                int height = getBarHeight(bins[bin], max);
+                for (int y = y0 + PLOT_HEIGHT - height; y < y0 + PLOT_HEIGHT; y++) {
+                    pixels[y * width + x0 + bin] = BAR;
+                }
+                pixels[(y0 + PLOT_HEIGHT) * width + x0 + bin] = FRAME;
+            }
+        });
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.BLACK);
+        graphics.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, LABEL_HEIGHT - 4));
+        for (int i = 0; i < tables; i++) {
+            graphics.drawString("Slot " + (page * tablesPerPage + i), (i % columns) * getCellWidth() + MARGIN,
+                    (i / columns) * getCellHeight() + LABEL_HEIGHT - 3);
+        }
+        graphics.dispose();
+        return image;
+    }
+
+    private String renderSvg(int page) {
+        int tables = getTablesOnPage(page);
+        int columns = Math.min(COLUMNS, tables);
+        int rows = (tables + columns - 1) / columns;
+        int width = columns * getCellWidth();
+        int height = rows * getCellHeight();
+        String cells = IntStream.range(0, tables).parallel().mapToObj(i -> {
+            int slot = page * tablesPerPage + i;
+            int x0 = (i % columns) * getCellWidth() + MARGIN;
+            int y0 = (i / columns) * getCellHeight() + LABEL_HEIGHT;
+            long[] bins = getBinCounts(table[slot]);
+            long max = Arrays.stream(bins).max().orElse(0);
+            StringBuilder cell = new StringBuilder();
+            cell.append("<text x=\"").append(x0).append("\" y=\"").append(y0 - 3).append("\">Slot ")
+                    .append(slot).append("</text>\n");
+            cell.append("<line x1=\"").append(x0).append("\" y1=\"").append(y0 + PLOT_HEIGHT)
+                    .append("\" x2=\"").append(x0 + bins.length).append("\" y2=\"").append(y0 + PLOT_HEIGHT)
+                    .append("\" stroke=\"#").append(String.format("%06X", FRAME)).append("\"/>\n");
+            for (int bin = 0; bin < bins.length; bin++) {
+                int barHeight = getBarHeight(bins[bin], max);
+                if (barHeight > 0) {
+                    cell.append("<rect x=\"").append(x0 + bin).append("\" y=\"").append(y0 + PLOT_HEIGHT - barHeight)
+                            .append("\" width=\"1\" height=\"").append(barHeight).append("\"/>\n");
+                }
+            }
+            return cell.toString();
+        }).collect(Collectors.joining());
+        return "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + width + "\" height=\"" + height + "\">\n"
+                + "<rect width=\"100%\" height=\"100%\" fill=\"#" + String.format("%06X", BACKGROUND) + "\"/>\n"
+                + "<g font-family=\"sans-serif\" font-size=\"" + (LABEL_HEIGHT - 4) + "\" fill=\"#"
+                + String.format("%06X", BAR) + "\">\n"
+                + cells
+                + "</g>\n</svg>\n";
+    }
+
+    private double[] convertLongToDoubleArray(long[] data) {
         double[] convertedData = new double[data.length];
         for (int i = 0; i < data.length; i++) {
             convertedData[i] = data[i];
@@ -0,0 +1,410 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import ch.zhaw.init.is.util.CpuQuota;
+import ch.zhaw.init.is.util.Metrics;
+import ch.zhaw.init.is.util.OutputRouter;
+import ch.zhaw.init.is.util.ProgressInfo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * This class implements an asynchronous job determining the key of a
+ * single XOR-encrypted file.
+ * <p>
+ * Two kinds of jobs are supported:
+ * <ul>
+ * <li>{@link #compressed}: files compressed with ZIP before they were encrypted,
+ * cracked with {@link XorAndCompressCracker}
+ * <li>{@link #uncompressed}: files with a known most frequent plaintext byte,
+ * cracked by frequency analysis
+ * </ul>
+ * A job is configured with the <tt>with...</tt> methods and then started with
+ * {@link #start()}, which returns immediately. The returned future completes with
+ * the key, with null if no key was found, or exceptionally if reading the file
+ * failed or the timeout expired. Cancelling the future (or calling {@link #cancel()})
+ * stops the search cooperatively. {@link #startAndWait()} starts the job and waits
+ * for the key in the calling thread; interrupting that thread cancels the job.
+ * <p>
+ * With {@link #withSampling()}, the byte frequency tables of large files are
+ * estimated from random samples by a {@link FrequencySampler} instead of a full scan.
+ * <p>
+ * Example:
+ * <pre>
+ * CrackJob.compressed("secret.zip.enc", 6, 4)
+ *         .withTimeout(10, TimeUnit.MINUTES)
+ *         .withProgressListener(p -&gt; System.out.println(p.getProgressInPercent()), 5000)
+ *         .start()
+ *         .thenAccept(key -&gt; ...);
+ * </pre>
+ */
+public class CrackJob implements ProgressInfo {
+    private static final ThreadFactory DAEMON_THREADS = r -> {
+        Thread thread = new Thread(r, "crack-job");
+        thread.setDaemon(true);
+        return thread;
+    };
+    private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(DAEMON_THREADS);
+    private static final ScheduledExecutorService PROGRESS_SCHEDULER =
+            Executors.newSingleThreadScheduledExecutor(DAEMON_THREADS);
+
+    private final String filename;
+    private final int keylength;
+    private final boolean compressed;
+    private final int depth;
+    private final int mostFrequentValue;
+    private SearchBudget budget = SearchBudget.UNLIMITED;
+    private long timeoutMillis;
+    private int parallelism = CpuQuota.getAvailableProcessors();
+    private Executor executor = DEFAULT_EXECUTOR;
+    private boolean sampling;
+    private boolean depthFirst;
+    private int maxKeylength;
+    private Consumer<ProgressInfo> progressListener;
+    private long progressIntervalMillis;
+    private volatile XorAndCompressCracker cracker;
+    private volatile FrequencySampler.Estimate samplingEstimate;
+    private volatile boolean cancelled;
+    private volatile boolean finished;
+    private CompletableFuture<int[]> future;
+    private ScheduledFuture<?> progressTask;
+
+    private CrackJob(String filename, int keylength, boolean compressed, int depth, int mostFrequentValue) {
+        if (keylength < 1) {
+            throw new IllegalArgumentException("Key length must be at least 1");
+        }
+        this.filename = filename;
+        this.keylength = keylength;
+        this.compressed = compressed;
+        this.depth = depth;
+        this.mostFrequentValue = mostFrequentValue;
+    }
+
+    /**
+     * Creates a job for a file that has been compressed with ZIP before it was encrypted.
+     *
+     * @param filename  The encrypted ZIP file
+     * @param keylength The key length in bytes
+     * @param depth     The search depth (top 'depth' most frequent bytes per key byte)
+     * @return The job
+     */
+    public static CrackJob compressed(String filename, int keylength, int depth) {
+        return new CrackJob(filename, keylength, true, depth, 0);
+    }
+
+    /**
+     * Creates a job for a file whose plaintext has a significantly most frequent byte value.
+     *
+     * @param filename          The encrypted file
+     * @param keylength         The key length in bytes
+     * @param mostFrequentValue The assumed most frequent byte in the plaintext
+     * @return The job
+     */
+    public static CrackJob uncompressed(String filename, int keylength, int mostFrequentValue) {
+        return new CrackJob(filename, keylength, false, 0, mostFrequentValue);
+    }
+
+    /**
+     * @param budget The budget limiting the key search
+     * @return This job
+     */
+    public CrackJob withBudget(SearchBudget budget) {
+        this.budget = budget;
+        return this;
+    }
+
+    /**
+     * @param timeout The time after which the job fails with a TimeoutException and is cancelled
+     * @param unit    The unit of the timeout
+     * @return This job
+     */
+    public CrackJob withTimeout(long timeout, TimeUnit unit) {
+        this.timeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * @param parallelism The maximum number of threads used to test candidate keys
+     * @return This job
+     */
+    public CrackJob withParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * @param executor The executor running the job (the key search itself runs on its own pool)
+     * @return This job
+     */
+    public CrackJob withExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Estimates the byte frequency tables from random samples of the file
+     * (see {@link FrequencySampler}).
+     *
+     * @return This job
+     */
+    public CrackJob withSampling() {
+        this.sampling = true;
+        return this;
+    }
+
+    /**
+     * Searches the key of a compressed file depth-first with pruning of subtrees
+     * (see {@link XorAndCompressCracker#setDepthFirst(boolean)}).
+     *
+     * @return This job
+     */
+    public CrackJob withDepthFirst() {
+        this.depthFirst = true;
+        return this;
+    }
+
+    /**
+     * Sweeps the key lengths from the key length of the job up to maxKeylength in
+     * one search (see {@link XorAndCompressCracker#determineKey(int, int, int, SearchBudget)}).
+     * Only for compressed jobs; the frequency tables are always computed from the
+     * whole file.
+     *
+     * @param maxKeylength The largest key length in bytes
+     * @return This job
+     */
+    public CrackJob withKeylengthSweep(int maxKeylength) {
+        if (maxKeylength < keylength) {
+            throw new IllegalArgumentException("Largest key length must be at least " + keylength);
+        }
+        this.maxKeylength = maxKeylength;
+        return this;
+    }
+
+    /**
+     * Sets a listener that is called periodically while the job runs and once when it ends.
+     * The listener writes to the targets of the thread that starts the job (see
+     * {@link OutputRouter#inheritTargets(Consumer)}).
+     *
+     * @param listener       The listener receiving this job as {@link ProgressInfo}
+     * @param intervalMillis The interval between two calls in ms
+     * @return This job
+     */
+    public CrackJob withProgressListener(Consumer<ProgressInfo> listener, long intervalMillis) {
+        this.progressListener = listener;
+        this.progressIntervalMillis = intervalMillis;
+        return this;
+    }
+
+    /**
+     * Starts the job.
+     *
+     * @return The future of the key (null, if no key was found)
+     * @throws IllegalStateException if the job has already been started
+     */
+    public synchronized CompletableFuture<int[]> start() {
+        if (future != null) {
+            throw new IllegalStateException("Job has already been started");
+        }
+        future = new CompletableFuture<>();
+        if (progressListener != null) {
+            // Reports to where the starting thread writes, e.g., to the client of a daemon job
+            progressListener = OutputRouter.inheritTargets(progressListener);
+            progressTask = PROGRESS_SCHEDULER.scheduleAtFixedRate(() -> progressListener.accept(this),
+                    progressIntervalMillis, progressIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        future.whenComplete((key, e) -> {
+            if (e != null) {
+                cancel();
+            }
+            finish();
+        });
+        if (timeoutMillis > 0) {
+            future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        executor.execute(() -> {
+            try {
+                int[] key = run();
+                finish();
+                future.complete(key);
+            } catch (IOException e) {
+                future.completeExceptionally(new UncheckedIOException(e));
+            } catch (RuntimeException | Error e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Starts the job and waits for its result. Interrupting the waiting thread
+     * cancels the job, e.g., when the thread runs on behalf of a client that is gone.
+     *
+     * @return The key or null, if no key was found
+     * @throws InterruptedException  if the waiting thread was interrupted; the job has been cancelled
+     * @throws CompletionException   if the job failed, with the cause of the failure
+     * @throws IllegalStateException if the job has already been started
+     */
+    public int[] startAndWait() throws InterruptedException {
+        CompletableFuture<int[]> f = start();
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            cancel();
+            throw e;
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    /**
+     * Stops the periodic progress reports and sends the final one.
+     * The final report is sent before the future completes, unless the
+     * job is completed from the outside (cancellation, timeout).
+     */
+    private synchronized void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (progressTask != null) {
+            progressTask.cancel(false);
+            progressListener.accept(this);
+        }
+    }
+
+    /**
+     * Cancels the job. The search stops as soon as possible and the future
+     * is completed with a CancellationException.
+     */
+    public void cancel() {
+        cancelled = true;
+        XorAndCompressCracker c = cracker;
+        if (c != null) {
+            c.cancel();
+        }
+        CompletableFuture<int[]> f;
+        synchronized (this) {
+            f = future;
+        }
+        if (f != null) {
+            f.cancel(false);
+        }
+    }
+
+    /**
+     * @return true, if the key search stopped because the budget was exhausted
+     */
+    public boolean isBudgetExhausted() {
+        XorAndCompressCracker c = cracker;
+        return c != null && c.isBudgetExhausted();
+    }
+
+    /**
+     * @return The number of candidate keys this job tests at most
+     */
+    public long getNumberOfCandidateKeys() {
+        if (!compressed) {
+            return 1;
+        }
+        long numberOfKeys = 0;
+        for (int length = keylength; length <= Math.max(keylength, maxKeylength); length++) {
+            long numberOfKeysOfLength = XorAndCompressCracker.getNumberOfCandidateKeys(length, depth);
+            if (numberOfKeysOfLength > Long.MAX_VALUE - numberOfKeys) {
+                return Long.MAX_VALUE;
+            }
+            numberOfKeys += numberOfKeysOfLength;
+        }
+        return numberOfKeys;
+    }
+
+    /**
+     * @return The estimate of the byte frequency tables, or null if the job does
+     *         not sample (see {@link #withSampling()}) or has not sampled yet
+     */
+    public FrequencySampler.Estimate getSamplingEstimate() {
+        return samplingEstimate;
+    }
+
+    private int[] run() throws IOException {
+        if (!compressed) {
+            ByteFrequencyTable[] frequencyTable = getFrequencyTable(1);
+            return cancelled ? null : ByteFrequencyTableHelpers.getCandidateKey(frequencyTable, mostFrequentValue);
+        }
+        XorAndCompressCracker c = new XorAndCompressCracker(filename);
+        c.setParallelism(parallelism);
+        c.setDepthFirst(depthFirst);
+        cracker = c;
+        if (cancelled) {
+            return null;
+        }
+        if (maxKeylength > keylength) {
+            return c.determineKey(keylength, maxKeylength, depth, budget);
+        }
+        if (sampling) {
+            return c.determineKey(getFrequencyTable(depth), depth, budget);
+        }
+        return c.determineKey(keylength, depth, budget);
+    }
+
+    private ByteFrequencyTable[] getFrequencyTable(int stableDepth) throws IOException {
+        if (sampling) {
+            FrequencySampler.Estimate estimate = new FrequencySampler(keylength, stableDepth).estimate(Paths.get(filename));
+            samplingEstimate = estimate;
+            return estimate.getFrequencyTables();
+        }
+        return FrequencyTableCache.shared().getFrequencyTables(Paths.get(filename), keylength);
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.util.ProgressInfo#getProgressAbsolute()
+     */
+    @Override
+    public double getProgressAbsolute() {
+        XorAndCompressCracker c = cracker;
+        if (c != null) {
+            return c.getProgressAbsolute();
+        }
+        return !compressed && finished ? 1 : 0;
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.util.ProgressInfo#getProgressInPercent()
+     */
+    @Override
+    public double getProgressInPercent() {
+        XorAndCompressCracker c = cracker;
+        if (c != null) {
+            return c.getProgressInPercent();
+        }
+        return !compressed && finished ? 100 : 0;
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.util.ProgressInfo#getUnit()
+     */
+    @Override
+    public String getUnit() {
+        return compressed ? "trials" : "keys";
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.util.ProgressInfo#getMetrics()
+     */
+    @Override
+    public Metrics getMetrics() {
+        XorAndCompressCracker c = cracker;
+        return c != null ? c.getMetrics() : null;
+    }
+}
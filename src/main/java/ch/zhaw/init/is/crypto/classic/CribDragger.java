@@ -0,0 +1,265 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * This class implements crib dragging: a known plaintext fragment (the crib),
+ * e.g., a file name inside a ZIP file or an HTTP header, is slid across data
+ * that has been encrypted with the XOR method with a short periodic key.
+ * <p>
+ * At every offset, the crib implies the key bytes of the slots it covers
+ * (offset modulo the key length). If the crib is longer than the key, the
+ * implied key bytes must repeat with the key length. This is checked without
+ * knowing the key: ciphertext bytes one key length apart must differ by the
+ * same XOR as the crib bytes one key length apart. The check of this index
+ * stops at the first mismatch, so most offsets are discarded after one or two
+ * byte comparisons.
+ * <p>
+ * Optionally, the implied key bytes are cross-checked against the candidates
+ * of the frequency analysis: only offsets whose key bytes are all among the
+ * top 'depth' candidates of their slot are kept, and the sum of their ranks
+ * tells how well they agree with the frequency analysis (lower is better).
+ * <p>
+ * Files are memory-mapped and the offsets are processed in parallel segments.
+ */
+public class CribDragger {
+    /**
+     * Default maximum number of matches collected.
+     */
+    public static final int MAX_MATCHES = 10000;
+    private static final int SEGMENT_SIZE = 1 << 20;
+    private static final long MAX_MAPPING_SIZE = Integer.MAX_VALUE - SEGMENT_SIZE;
+    private static final int NO_RANK = -1;
+
+    private final byte[] crib;
+    private final int keylength;
+    private final int[] periodicDifference;
+    private int[][] ranks;
+    private int maxMatches = MAX_MATCHES;
+
+    /**
+     * An offset at which the crib is consistent with a periodic key.
+     */
+    public static class Match {
+        private final long offset;
+        private final int[] key;
+        private final int rankSum;
+
+        Match(long offset, int[] key, int rankSum) {
+            this.offset = offset;
+            this.key = key;
+            this.rankSum = rankSum;
+        }
+
+        /**
+         * @return The offset of the crib in the data
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return The key implied by the crib; slots not covered by the crib are -1
+         */
+        public int[] getKey() {
+            return key.clone();
+        }
+
+        /**
+         * @return true, if the crib covers all slots of the key
+         */
+        public boolean isComplete() {
+            return Arrays.stream(key).noneMatch(b -> b < 0);
+        }
+
+        /**
+         * @return The sum of the ranks of the key bytes among the frequency
+         * candidates, or 0 without frequency candidates
+         */
+        public int getRankSum() {
+            return rankSum;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param crib      The known plaintext fragment
+     * @param keylength The length of the key in bytes
+     */
+    public CribDragger(byte[] crib, int keylength) {
+        if (crib.length == 0 || keylength < 1) {
+            throw new IllegalArgumentException("Crib must not be empty and key length must be at least 1");
+        }
+        this.crib = crib.clone();
+        this.keylength = keylength;
+        this.periodicDifference = new int[Math.max(0, crib.length - keylength)];
+        for (int i = 0; i < periodicDifference.length; i++) {
+            periodicDifference[i] = (crib[i + keylength] ^ crib[i]) & 0xFF;
+        }
+    }
+
+    /**
+     * Cross-checks the implied key bytes against the frequency candidates.
+     *
+     * @param frequencyTable    The byte frequency tables of the ciphertext, one per key byte
+     * @param depth             The number of candidates per key byte
+     * @param mostFrequentValue The assumed most frequent byte in the plaintext
+     * @return This crib dragger
+     */
+    public CribDragger withFrequencyCandidates(ByteFrequencyTable[] frequencyTable, int depth, int mostFrequentValue) {
+        if (frequencyTable.length != keylength) {
+            throw new IllegalArgumentException("Number of tables must equal the key length");
+        }
+        ranks = new int[keylength][ByteFrequencyTable.BYTE_VALUES];
+        for (int slot = 0; slot < keylength; slot++) {
+            Arrays.fill(ranks[slot], NO_RANK);
+            int[] candidates = frequencyTable[slot].getMostFrequentBytes(depth);
+            for (int rank = 0; rank < candidates.length; rank++) {
+                ranks[slot][candidates[rank] ^ mostFrequentValue] = rank;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @param maxMatches The maximum number of matches collected; the matches
+     *                   at the highest offsets are dropped
+     * @return This crib dragger
+     */
+    public CribDragger withMaxMatches(int maxMatches) {
+        this.maxMatches = maxMatches;
+        return this;
+    }
+
+    /**
+     * Drags the crib across the data.
+     *
+     * @param ciphertext The encrypted data
+     * @return The matches in ascending order of their offsets
+     */
+    public List<Match> drag(byte[] ciphertext) {
+        List<Match> matches = new ArrayList<>();
+        drag(ByteBuffer.wrap(ciphertext), 0, ciphertext.length, matches);
+        return matches;
+    }
+
+    /**
+     * Drags the crib across the content of the file, which is memory-mapped.
+     *
+     * @param file The encrypted file
+     * @return The matches in ascending order of their offsets
+     * @throws IOException if the file cannot be read
+     */
+    public List<Match> drag(Path file) throws IOException {
+        List<Match> matches = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long start = 0; start < size && matches.size() < maxMatches; start += MAX_MAPPING_SIZE) {
+                long length = Math.min(size - start, MAX_MAPPING_SIZE + crib.length - 1);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                int offsets = (int) Math.min(length, MAX_MAPPING_SIZE);
+                drag(buffer, start, offsets, matches);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Checks the first offsets of the buffer in parallel segments and appends
+     * the matches at the lowest offsets until there are 'maxMatches' matches.
+     * Each segment collects at most the missing number of matches; once a segment
+     * has collected them, no segment needs to look beyond its last match.
+     */
+    private void drag(ByteBuffer data, long position, int offsets, List<Match> matches) {
+        int last = Math.min(offsets, data.limit() - crib.length + 1);
+        int missing = maxMatches - matches.size();
+        if (last <= 0 || missing <= 0) {
+            return;
+        }
+        int segments = (last + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+        AtomicInteger cutoff = new AtomicInteger(last);
+        List<List<Match>> segmentMatches = IntStream.range(0, segments).parallel().mapToObj(segment -> {
+            List<Match> found = new ArrayList<>();
+            int end = Math.min(last, (segment + 1) * SEGMENT_SIZE);
+            for (int offset = segment * SEGMENT_SIZE; offset < end && offset < cutoff.get(); offset++) {
+                Match match = check(data, position, offset);
+                if (match != null) {
+                    found.add(match);
+                    if (found.size() == missing) {
+                        cutoff.accumulateAndGet(offset + 1, Math::min);
+                        break;
+                    }
+                }
+            }
+            return found;
+        }).collect(Collectors.toList());
+        for (List<Match> found : segmentMatches) {
+            for (Match match : found) {
+                if (matches.size() == maxMatches) {
+                    return;
+                }
+                matches.add(match);
+            }
+        }
+    }
+
+    /**
+     * Checks the crib at one offset.
+     *
+     * @return The match or null, if the crib is inconsistent at the offset
+     */
+    private Match check(ByteBuffer data, long position, int offset) {
+        for (int i = 0; i < periodicDifference.length; i++) {
+            if (((data.get(offset + i + keylength) ^ data.get(offset + i)) & 0xFF) != periodicDifference[i]) {
+                return null;
+            }
+        }
+        int[] key = new int[keylength];
+        Arrays.fill(key, -1);
+        int rankSum = 0;
+        for (int i = 0; i < Math.min(crib.length, keylength); i++) {
+            int slot = (int) ((position + offset + i) % keylength);
+            int keyByte = (data.get(offset + i) ^ crib[i]) & 0xFF;
+            if (ranks != null) {
+                int rank = ranks[slot][keyByte];
+                if (rank == NO_RANK) {
+                    return null;
+                }
+                rankSum += rank;
+            }
+            key[slot] = keyByte;
+        }
+        return new Match(position + offset, key, rankSum);
+    }
+
+    /**
+     * Determines the complete key implied by the most matches, preferring lower
+     * rank sums on ties.
+     *
+     * @param matches The matches
+     * @return The key or null, if no match covers all slots
+     */
+    public static int[] getConsensusKey(List<Match> matches) {
+        return matches.stream()
+                .filter(Match::isComplete)
+                .collect(Collectors.groupingBy(m -> Arrays.toString(m.key)))
+                .values().stream()
+                .min(Comparator.<List<Match>>comparingInt(List::size).reversed()
+                        .thenComparingInt(l -> l.get(0).rankSum))
+                .map(l -> l.get(0).getKey())
+                .orElse(null);
+    }
+}
@@ -0,0 +1,280 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+/**
+ * This class implements a depth-first search over the candidate keys with
+ * pruning of subtrees.
+ * <p>
+ * The key bytes are chosen one after the other, each from the candidates of
+ * its slot in the order of their rank, so the complete keys are visited in
+ * the same order as by the odometer order of {@link KeyGenerator}. As soon as a
+ * key byte has been chosen, the plaintext positions of its slot within the
+ * known structure at the beginning of the file are decrypted, and every
+ * {@link Rule} whose positions are all decrypted now is checked. If a rule
+ * is violated, the whole subtree below the chosen key bytes is skipped.
+ * Since only rules are used that every plaintext accepted by the final
+ * validation satisfies, no key that the odometer search would find is lost.
+ * <p>
+ * The subtrees of the first levels are searched in parallel fork/join tasks.
+ */
+class DepthFirstKeySearch {
+    private static final int TASKS_PER_THREAD = 4;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int DATA_DESCRIPTOR_FLAG = 0x08;
+    private static final long ZIP64_SIZE = 0xFFFFFFFFL;
+
+    private final byte[] ciphertext;
+    private final int keylength;
+    private final int[][] keyBytes;
+    private final List<List<Rule>> rulesByLevel = new ArrayList<>();
+    private final int[][] positionsBySlot;
+    private final int prefixLength;
+    private final AtomicLong trials = new AtomicLong();
+    private LongAdder prunedSubtrees = new LongAdder();
+    private final AtomicReference<int[]> result = new AtomicReference<>();
+    private Predicate<int[]> validator;
+    private BooleanSupplier stop;
+
+    /**
+     * A condition on the plaintext at known positions.
+     */
+    static class Rule {
+        private final int[] positions;
+        private final Predicate<byte[]> condition;
+
+        /**
+         * @param positions The positions of the plaintext the condition depends on
+         * @param condition The condition, tested with the plaintext prefix once all positions are decrypted
+         */
+        Rule(Predicate<byte[]> condition, int... positions) {
+            this.positions = positions;
+            this.condition = condition;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param ciphertext The encrypted data
+     * @param keyBytes   The candidate key bytes per slot in the order they are tried
+     * @param rules      The rules on the plaintext
+     */
+    DepthFirstKeySearch(byte[] ciphertext, int[][] keyBytes, List<Rule> rules) {
+        this.ciphertext = ciphertext;
+        this.keylength = keyBytes.length;
+        this.keyBytes = keyBytes;
+        int maxPosition = -1;
+        for (int level = 0; level < keylength; level++) {
+            rulesByLevel.add(new ArrayList<>());
+        }
+        for (Rule rule : rules) {
+            int level = 0;
+            boolean inside = true;
+            for (int position : rule.positions) {
+                level = Math.max(level, position % keylength);
+                maxPosition = Math.max(maxPosition, position);
+                inside &= position < ciphertext.length;
+            }
+            if (inside) {
+                rulesByLevel.get(level).add(rule);
+            }
+        }
+        prefixLength = Math.min(ciphertext.length, maxPosition + 1);
+        positionsBySlot = new int[keylength][];
+        for (int slot = 0; slot < keylength; slot++) {
+            int count = prefixLength > slot ? (prefixLength - slot + keylength - 1) / keylength : 0;
+            positionsBySlot[slot] = new int[count];
+            for (int i = 0; i < count; i++) {
+                positionsBySlot[slot][i] = slot + i * keylength;
+            }
+        }
+    }
+
+    /**
+     * @param counter The counter incremented for every skipped subtree, e.g., one of a {@link ch.zhaw.init.is.util.Metrics}
+     * @return This search
+     */
+    DepthFirstKeySearch withPrunedSubtreesCounter(LongAdder counter) {
+        this.prunedSubtrees = counter;
+        return this;
+    }
+
+    /**
+     * The rules of the local file header at the beginning of a ZIP file that
+     * involve several key bytes: the data of the first entry (after the file
+     * name and the extra field) must start within the file and, if its size is
+     * given in the header, end within the file; a stored entry must have equal
+     * compressed and uncompressed sizes.
+     *
+     * @param length The length of the file
+     * @return The rules
+     */
+    static List<Rule> zipLocalHeaderRules(int length) {
+        List<Rule> rules = new ArrayList<>();
+        rules.add(new Rule(p -> getDataOffset(p) <= length, 26, 27, 28, 29));
+        rules.add(new Rule(p -> (p[6] & DATA_DESCRIPTOR_FLAG) != 0 || getInt(p, 18) == ZIP64_SIZE
+                || getInt(p, 22) == ZIP64_SIZE || getDataOffset(p) + getInt(p, 18) <= length,
+                6, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29));
+        rules.add(new Rule(p -> getShort(p, 8) != 0 || getInt(p, 18) == getInt(p, 22),
+                8, 9, 18, 19, 20, 21, 22, 23, 24, 25));
+        return rules;
+    }
+
+    private static int getShort(byte[] plaintext, int offset) {
+        return (plaintext[offset] & 0xFF) | (plaintext[offset + 1] & 0xFF) << 8;
+    }
+
+    private static long getInt(byte[] plaintext, int offset) {
+        return getShort(plaintext, offset) | (long) getShort(plaintext, offset + 2) << 16;
+    }
+
+    private static long getDataOffset(byte[] plaintext) {
+        return LOCAL_HEADER_SIZE + getShort(plaintext, 26) + getShort(plaintext, 28);
+    }
+
+    /**
+     * Searches the key.
+     *
+     * @param validator   Validates a complete key; called from several threads
+     * @param stop        Stops the search when true; tested before each validation
+     * @param parallelism The number of threads
+     * @return The first valid key found or null
+     */
+    int[] search(Predicate<int[]> validator, BooleanSupplier stop, int parallelism) {
+        this.validator = validator;
+        this.stop = stop;
+        result.set(null);
+        if (Arrays.stream(keyBytes).anyMatch(candidates -> candidates.length == 0)) {
+            return null;
+        }
+        Branch root = new Branch(0, new int[keylength], new byte[prefixLength], getSplitLevel(parallelism));
+        if (parallelism == 1) {
+            root.compute();
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(root);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return result.get();
+    }
+
+    /**
+     * @return The level up to which subtrees are searched in tasks of their own,
+     * so that there are a few tasks per thread
+     */
+    private int getSplitLevel(int parallelism) {
+        if (parallelism == 1) {
+            return 0;
+        }
+        long tasks = 1;
+        int level = 0;
+        while (level < keylength - 1 && tasks < (long) TASKS_PER_THREAD * parallelism) {
+            tasks *= keyBytes[level].length;
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * @return The number of complete keys validated so far
+     */
+    long getTrials() {
+        return trials.get();
+    }
+
+    /**
+     * @return The number of subtrees skipped so far because a rule was violated
+     */
+    long getPrunedSubtrees() {
+        return prunedSubtrees.sum();
+    }
+
+    /**
+     * Chooses the key byte of the level and checks the rules that become decidable.
+     *
+     * @return true, if no rule is violated
+     */
+    private boolean choose(int level, int keyByte, int[] key, byte[] plaintext) {
+        key[level] = keyByte;
+        for (int position : positionsBySlot[level]) {
+            plaintext[position] = (byte) (ciphertext[position] ^ keyByte);
+        }
+        for (Rule rule : rulesByLevel.get(level)) {
+            if (!rule.condition.test(plaintext)) {
+                prunedSubtrees.increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Searches the subtree below the key bytes chosen so far sequentially.
+     */
+    private void searchSequentially(int level, int[] key, byte[] plaintext) {
+        for (int keyByte : keyBytes[level]) {
+            if (result.get() != null || stop.getAsBoolean()) {
+                return;
+            }
+            if (!choose(level, keyByte, key, plaintext)) {
+                continue;
+            }
+            if (level < keylength - 1) {
+                searchSequentially(level + 1, key, plaintext);
+            } else {
+                trials.incrementAndGet();
+                if (validator.test(key)) {
+                    result.compareAndSet(null, key.clone());
+                }
+            }
+        }
+    }
+
+    /**
+     * The task searching the subtree below the key bytes chosen so far.
+     */
+    private class Branch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int level;
+        private final int[] key;
+        private final byte[] plaintext;
+        private final int splitLevel;
+
+        Branch(int level, int[] key, byte[] plaintext, int splitLevel) {
+            this.level = level;
+            this.key = key;
+            this.plaintext = plaintext;
+            this.splitLevel = splitLevel;
+        }
+
+        @Override
+        protected void compute() {
+            if (level >= splitLevel) {
+                searchSequentially(level, key, plaintext);
+                return;
+            }
+            List<Branch> branches = new ArrayList<>();
+            for (int keyByte : keyBytes[level]) {
+                int[] childKey = key.clone();
+                byte[] childPlaintext = plaintext.clone();
+                if (choose(level, keyByte, childKey, childPlaintext)) {
+                    branches.add(new Branch(level + 1, childKey, childPlaintext, splitLevel));
+                }
+            }
+            invokeAll(branches);
+        }
+    }
+}
@@ -1,20 +1,131 @@
 package ch.zhaw.init.is.crypto.classic;
 
+import ch.zhaw.init.is.util.LatencyHistogram;
+import ch.zhaw.init.is.util.Metrics;
+
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 /**
+ * A candidate key is confirmed in stages, each one more expensive than the
+ * previous one and only run if the previous one passed:
+ * <ol>
+ * <li>header: the heuristics of {@link #isKeyValidHeuristics}
+ * <li>prefix: the local header of the first entry is decrypted and up to
+ * {@value #PREFIX_SIZE} bytes of its data are inflated
+ * <li>entry: the first entry of at most {@value #SMALL_ENTRY_SIZE} compressed
+ * bytes among the first {@value #MAX_ENTRIES_CHECKED} entries is decrypted
+ * and inflated completely, and its CRC and size are compared with its header
+ * <li>walk: the whole file is decrypted and all entries are read with a
+ * {@link ZipInputStream}. This stage only runs if enabled with
+ * {@link #setFullWalk}, or if no entry could be checked in the entry stage.
+ * </ol>
+ * Only the bytes needed by a stage are decrypted. The time spent in each
+ * stage and the keys rejected by it are recorded in the metrics.
+ * <p>
+ * The inflater of the prefix and entry stages holds native memory until
+ * {@link #close()} is called.
+ *
  * @author tebe
  */
-public class EncryptedZipFile {
+public class EncryptedZipFile implements AutoCloseable {
+    /**
+     * Name of the counter of keys rejected by the header heuristics.
+     */
+    public static final String HEADER_REJECTIONS = "headerRejections";
+    /**
+     * Name of the counter of keys rejected when walking the ZIP structure.
+     */
+    public static final String STRUCTURAL_REJECTIONS = "structuralRejections";
+    /**
+     * Name of the counter of full decryptions and inflates of the file.
+     */
+    public static final String FULL_INFLATES = "fullInflates";
+    /**
+     * Name of the latency histogram of the header heuristics.
+     */
+    public static final String HEADER_LATENCY = "header";
+    /**
+     * Name of the latency histogram of the decryption and the inflate.
+     */
+    public static final String INFLATE_LATENCY = "inflate";
+    /**
+     * Name of the counter of keys rejected when inflating the prefix of the first entry.
+     */
+    public static final String PREFIX_REJECTIONS = "prefixRejections";
+    /**
+     * Name of the counter of keys rejected by the CRC or size of a small entry.
+     */
+    public static final String ENTRY_REJECTIONS = "entryRejections";
+    /**
+     * Name of the latency histogram of the prefix inflate.
+     */
+    public static final String PREFIX_LATENCY = "prefix";
+    /**
+     * Name of the latency histogram of the small entry check.
+     */
+    public static final String ENTRY_LATENCY = "entry";
+    /**
+     * Number of bytes inflated in the prefix stage.
+     */
+    public static final int PREFIX_SIZE = 4 * 1024;
+    /**
+     * Maximum compressed size of the entry checked in the entry stage.
+     */
+    public static final int SMALL_ENTRY_SIZE = 64 * 1024;
+    /**
+     * Number of entries searched for a small entry in the entry stage.
+     */
+    public static final int MAX_ENTRIES_CHECKED = 16;
     private static final byte[] ZIP_FILE_HEADER = {0x50, 0x4B, 0x03, 0x04};
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int DATA_DESCRIPTOR_FLAG = 0x08;
+    private static final long ZIP64_SIZE = 0xFFFFFFFFL;
+    private static final long DATA_DESCRIPTOR_SIGNATURE = 0x08074B50L;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
     private ByteBuffer buffer = ByteBuffer.allocate(8);
     private byte[] encryptedZipFile;
     private byte[] decryptedZipFile;
     private ByteArrayInputStream inputStreamDecryptedZipFile;
+    private Metrics metrics;
+    private LongAdder headerRejections;
+    private LongAdder structuralRejections;
+    private LongAdder fullInflates;
+    private LatencyHistogram headerLatency;
+    private LatencyHistogram inflateLatency;
+    private LongAdder prefixRejections;
+    private LongAdder entryRejections;
+    private LatencyHistogram prefixLatency;
+    private LatencyHistogram entryLatency;
+    private boolean fullWalk;
+    private Inflater inflater;
+    private final byte[] inflateBuffer = new byte[PREFIX_SIZE];
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Result of the entry stage.
+     */
+    private enum Check {PASSED, FAILED, UNKNOWN}
+
+    /**
+     * The fields of a local file header needed by the stages.
+     */
+    private static class LocalHeader {
+        int flags;
+        int method;
+        long crc;
+        long compressedSize;
+        long size;
+        int dataOffset;
+    }
 
     public static EncryptedZipFile create(String filename) throws IOException {
         EncryptedZipFile file = null;
@@ -32,21 +143,21 @@ public class EncryptedZipFile {
     }
 
     public static EncryptedZipFile create(InputStream inputStream) throws IOException {
-        EncryptedZipFile file = new EncryptedZipFile();
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        try {
-            int tempByte;
-            while ((tempByte = inputStream.read()) != -1) {
-                outputStream.write(tempByte);
-            }
-
-            file.encryptedZipFile = outputStream.toByteArray();
-            file.decryptedZipFile = new byte[file.encryptedZipFile.length];
-            file.inputStreamDecryptedZipFile = new ByteArrayInputStream(file.decryptedZipFile);
-        } finally {
-            outputStream.close();
-        }
+        return create(inputStream.readAllBytes());
+    }
 
+    /**
+     * Creates an encrypted ZIP file from its content without copying it.
+     * The content must not be modified afterwards.
+     *
+     * @param encryptedZipFile The content of the encrypted file
+     * @return The file
+     */
+    public static EncryptedZipFile create(byte[] encryptedZipFile) {
+        EncryptedZipFile file = new EncryptedZipFile();
+        file.encryptedZipFile = encryptedZipFile;
+        file.decryptedZipFile = new byte[encryptedZipFile.length];
+        file.inputStreamDecryptedZipFile = new ByteArrayInputStream(file.decryptedZipFile);
         return file;
     }
 
@@ -57,13 +168,55 @@ public class EncryptedZipFile {
     private EncryptedZipFile() {
     }
 
+    /**
+     * Creates a copy for use in another thread. The encrypted content is
+     * shared, only the buffer for the decrypted content is new.
+     *
+     * @return The copy
+     */
     public EncryptedZipFile clone() {
-        try (ByteArrayInputStream is = new ByteArrayInputStream(this.encryptedZipFile)) {
-            return create(new ByteArrayInputStream(this.encryptedZipFile));
-        } catch (IOException ignored) {
+        EncryptedZipFile file = create(this.encryptedZipFile);
+        file.setMetrics(metrics);
+        file.fullWalk = fullWalk;
+        return file;
+    }
+
+    /**
+     * Sets the metrics the trials of {@link #tryDecryption} are recorded in.
+     * Clones created afterwards record into the same metrics.
+     *
+     * @param metrics The metrics or null, if nothing should be recorded
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        if (metrics != null) {
+            headerRejections = metrics.counter(HEADER_REJECTIONS);
+            structuralRejections = metrics.counter(STRUCTURAL_REJECTIONS);
+            fullInflates = metrics.counter(FULL_INFLATES);
+            headerLatency = metrics.histogram(HEADER_LATENCY);
+            inflateLatency = metrics.histogram(INFLATE_LATENCY);
+            prefixRejections = metrics.counter(PREFIX_REJECTIONS);
+            entryRejections = metrics.counter(ENTRY_REJECTIONS);
+            prefixLatency = metrics.histogram(PREFIX_LATENCY);
+            entryLatency = metrics.histogram(ENTRY_LATENCY);
         }
+    }
 
-        return null;
+    /**
+     * Enables the walk over all entries for every key that passed the
+     * cheaper stages. Clones created afterwards use the same setting.
+     *
+     * @param fullWalk true, if all entries should be read
+     */
+    public void setFullWalk(boolean fullWalk) {
+        this.fullWalk = fullWalk;
+    }
+
+    /**
+     * @return The raw bytes of the ZIPed and encrypted file (not a copy)
+     */
+    byte[] getEncryptedBytes() {
+        return encryptedZipFile;
     }
 
     /**
@@ -74,8 +227,12 @@ public class EncryptedZipFile {
     }
 
     private void decrypt(int[] key) {
-        int keyIndex = 0;
-        for (int i = 0; i < encryptedZipFile.length; i++) {
+        decrypt(key, 0, encryptedZipFile.length);
+    }
+
+    private void decrypt(int[] key, int from, int to) {
+        int keyIndex = from % key.length;
+        for (int i = from; i < to; i++) {
             decryptedZipFile[i] = (byte) (encryptedZipFile[i] ^ key[keyIndex]);
             keyIndex = (keyIndex + 1) % key.length;
         }
@@ -99,15 +256,252 @@ public class EncryptedZipFile {
     /**
      * Try to decrypt the file with the provided key.
      * Decryption is successful if decompression of the
-     * decrypted file was successful.
+     * decrypted file was successful (see the stages above).
+     * If successful, the whole file is decrypted afterwards.
      *
      * @param key The key
      * @return true, if decryption was successful
      */
     public boolean tryDecryption(int[] key) {
-        if (!isKeyValidHeuristics(key)) {
+        long start = startStage();
+        if (!endStage(isKeyValidHeuristics(key), start, headerLatency, headerRejections)) {
+            return false;
+        }
+        start = startStage();
+        if (!endStage(isValidPrefix(key), start, prefixLatency, prefixRejections)) {
+            return false;
+        }
+        start = startStage();
+        Check entry = checkSmallEntry(key);
+        if (!endStage(entry != Check.FAILED, start, entryLatency, entryRejections)) {
             return false;
         }
+        if (entry == Check.UNKNOWN || fullWalk) {
+            start = startStage();
+            if (metrics != null) {
+                fullInflates.increment();
+            }
+            return endStage(isValidZipFile(key), start, inflateLatency, structuralRejections);
+        }
+        decrypt(key);
+        return true;
+    }
+
+    private long startStage() {
+        return metrics != null ? System.nanoTime() : 0;
+    }
+
+    private boolean endStage(boolean passed, long start, LatencyHistogram latency, LongAdder rejections) {
+        if (metrics != null) {
+            latency.recordSince(start);
+            if (!passed) {
+                rejections.increment();
+            }
+        }
+        return passed;
+    }
+
+    /**
+     * Decrypts and parses the local file header at the offset.
+     *
+     * @return The header or null, if there is no valid local file header
+     */
+    private LocalHeader readLocalHeader(int[] key, int offset) {
+        if (offset < 0 || offset > decryptedZipFile.length - LOCAL_HEADER_SIZE) {
+            return null;
+        }
+        decrypt(key, offset, offset + LOCAL_HEADER_SIZE);
+        for (int i = 0; i < ZIP_FILE_HEADER.length; i++) {
+            if (decryptedZipFile[offset + i] != ZIP_FILE_HEADER[i]) {
+                return null;
+            }
+        }
+        LocalHeader header = new LocalHeader();
+        header.flags = getUnsignedShort(offset + 6);
+        header.method = getUnsignedShort(offset + 8);
+        header.crc = getUnsignedInt(offset + 14);
+        header.compressedSize = getUnsignedInt(offset + 18);
+        header.size = getUnsignedInt(offset + 22);
+        header.dataOffset = offset + LOCAL_HEADER_SIZE + getUnsignedShort(offset + 26) + getUnsignedShort(offset + 28);
+        if (header.dataOffset > decryptedZipFile.length
+                || (header.method != STORED && header.method != DEFLATED)
+                || (header.method == STORED && (header.flags & DATA_DESCRIPTOR_FLAG) != 0)) {
+            return null;
+        }
+        return header;
+    }
+
+    private int getUnsignedShort(int offset) {
+        return (decryptedZipFile[offset] & 0xFF) | (decryptedZipFile[offset + 1] & 0xFF) << 8;
+    }
+
+    private long getUnsignedInt(int offset) {
+        return getUnsignedShort(offset) | (long) getUnsignedShort(offset + 2) << 16;
+    }
+
+    /**
+     * @return true, if the sizes in the header are valid, i.e., they are neither
+     * stored in a data descriptor after the data nor in a ZIP64 extra field
+     */
+    private boolean hasKnownSizes(LocalHeader header) {
+        return (header.flags & DATA_DESCRIPTOR_FLAG) == 0
+                && header.compressedSize != ZIP64_SIZE && header.size != ZIP64_SIZE;
+    }
+
+    /**
+     * The prefix stage: inflates the beginning of the first entry.
+     */
+    private boolean isValidPrefix(int[] key) {
+        LocalHeader header = readLocalHeader(key, 0);
+        if (header == null) {
+            return false;
+        }
+        if (header.method == STORED) {
+            return header.compressedSize == header.size;
+        }
+        long available = decryptedZipFile.length - header.dataOffset;
+        if (hasKnownSizes(header)) {
+            available = Math.min(available, header.compressedSize);
+        }
+        int length = (int) Math.min(available, PREFIX_SIZE);
+        decrypt(key, header.dataOffset, header.dataOffset + length);
+        Inflater inflater = getInflater();
+        inflater.setInput(decryptedZipFile, header.dataOffset, length);
+        try {
+            while (inflater.getTotalOut() < PREFIX_SIZE && !inflater.finished() && !inflater.needsInput()) {
+                if (inflater.inflate(inflateBuffer) == 0 && inflater.needsDictionary()) {
+                    return false;
+                }
+            }
+        } catch (DataFormatException e) {
+            return false;
+        }
+        return !inflater.finished() || !hasKnownSizes(header) || inflater.getBytesWritten() == header.size;
+    }
+
+    /**
+     * The entry stage: checks the CRC and the size of the first small entry.
+     * An entry with a data descriptor can only be checked if it is the first
+     * one encountered, since its size is not known before it is inflated.
+     */
+    private Check checkSmallEntry(int[] key) {
+        int offset = 0;
+        for (int entries = 0; entries < MAX_ENTRIES_CHECKED; entries++) {
+            LocalHeader header = readLocalHeader(key, offset);
+            if (header == null) {
+                return Check.UNKNOWN;
+            }
+            if ((header.flags & DATA_DESCRIPTOR_FLAG) != 0) {
+                return checkEntryWithDataDescriptor(key, header);
+            }
+            if (!hasKnownSizes(header)) {
+                return Check.UNKNOWN;
+            }
+            long end = header.dataOffset + header.compressedSize;
+            if (end > decryptedZipFile.length) {
+                return Check.FAILED;
+            }
+            if (header.compressedSize <= SMALL_ENTRY_SIZE) {
+                decrypt(key, header.dataOffset, (int) end);
+                return isValidEntry(header, header.crc, header.compressedSize, header.size)
+                        ? Check.PASSED : Check.FAILED;
+            }
+            offset = (int) end;
+        }
+        return Check.UNKNOWN;
+    }
+
+    private Check checkEntryWithDataDescriptor(int[] key, LocalHeader header) {
+        int length = Math.min(SMALL_ENTRY_SIZE, decryptedZipFile.length - header.dataOffset);
+        decrypt(key, header.dataOffset, header.dataOffset + length);
+        Check inflated = inflateEntry(header.dataOffset, length);
+        if (inflated != Check.PASSED) {
+            return inflated == Check.UNKNOWN && length == SMALL_ENTRY_SIZE ? Check.UNKNOWN : Check.FAILED;
+        }
+        int offset = header.dataOffset + (int) inflater.getBytesRead();
+        decrypt(key, offset, Math.min(offset + 16, decryptedZipFile.length));
+        if (offset + 4 <= decryptedZipFile.length && getUnsignedInt(offset) == DATA_DESCRIPTOR_SIGNATURE) {
+            offset += 4;
+        }
+        if (offset + 12 > decryptedZipFile.length) {
+            return Check.FAILED;
+        }
+        return isValidEntry(getUnsignedInt(offset), getUnsignedInt(offset + 4), getUnsignedInt(offset + 8))
+                ? Check.PASSED : Check.FAILED;
+    }
+
+    private boolean isValidEntry(LocalHeader header, long crc, long compressedSize, long size) {
+        if (header.method == STORED) {
+            this.crc.reset();
+            this.crc.update(decryptedZipFile, header.dataOffset, (int) compressedSize);
+            return compressedSize == size && this.crc.getValue() == crc;
+        }
+        return inflateEntry(header.dataOffset, (int) compressedSize) == Check.PASSED
+                && isValidEntry(crc, compressedSize, size);
+    }
+
+    /**
+     * Compares the entry inflated last with its CRC and sizes.
+     */
+    private boolean isValidEntry(long crc, long compressedSize, long size) {
+        return inflater.getBytesRead() == compressedSize && inflater.getBytesWritten() == size
+                && this.crc.getValue() == crc;
+    }
+
+    /**
+     * Inflates the data and updates the CRC with the result.
+     *
+     * @return PASSED, if the end of the deflate data was reached, UNKNOWN, if
+     * more input is needed, or FAILED, if the data is invalid
+     */
+    private Check inflateEntry(int offset, int length) {
+        crc.reset();
+        Inflater inflater = getInflater();
+        inflater.setInput(decryptedZipFile, offset, length);
+        try {
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(inflateBuffer);
+                if (inflated == 0) {
+                    if (inflater.needsDictionary()) {
+                        return Check.FAILED;
+                    }
+                    if (inflater.needsInput()) {
+                        return Check.UNKNOWN;
+                    }
+                }
+                crc.update(inflateBuffer, 0, inflated);
+            }
+        } catch (DataFormatException e) {
+            return Check.FAILED;
+        }
+        return Check.PASSED;
+    }
+
+    /**
+     * Releases the native memory of the inflater. The file can still be used
+     * afterwards; it then allocates a new inflater and has to be closed again.
+     */
+    @Override
+    public void close() {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    /**
+     * @return The reset inflater of this file for raw deflate data
+     */
+    private Inflater getInflater() {
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        } else {
+            inflater.reset();
+        }
+        return inflater;
+    }
+
+    private boolean isValidZipFile(int[] key) {
         decrypt(key);
         inputStreamDecryptedZipFile.reset();
         ZipInputStream zip = new ZipInputStream(inputStreamDecryptedZipFile);
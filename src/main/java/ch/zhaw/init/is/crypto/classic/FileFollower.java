@@ -0,0 +1,163 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * This class implements the analysis of a growing file, e.g., a log or a
+ * capture that is still being written ("tail -f").
+ * <p>
+ * The slotted tables of a {@link StreamingHistogram} are kept between polls. On
+ * every poll, only the bytes appended since the last poll are read, starting at
+ * the offset reached so far; the slot of a byte is its offset modulo the number
+ * of slots, exactly as if the whole file was read at once. Thus, the cost of a
+ * poll depends on the number of appended bytes and the number of slots, not on
+ * the size of the file. If the file shrinks (e.g., it has been truncated or
+ * rotated), the analysis starts over at offset 0.
+ * <p>
+ * A poll reports a change only if the ranking of the top K most frequent bytes
+ * of a slot has changed, so listeners are not flooded with identical results.
+ */
+public class FileFollower {
+    /**
+     * Default interval between two polls in ms.
+     */
+    public static final long POLL_INTERVAL = 1000;
+    /**
+     * Default number of most frequent bytes per slot whose ranking is watched.
+     */
+    public static final int TOP_K = 1;
+
+    private final Path file;
+    private final int slots;
+    private final byte[] buffer = new byte[StreamingHistogram.BLOCK_SIZE];
+    private long pollInterval = POLL_INTERVAL;
+    private int topK = TOP_K;
+    private StreamingHistogram histogram;
+    private int[][] ranking;
+
+    /**
+     * Constructor.
+     *
+     * @param file  The file to follow
+     * @param slots The number of slots (e.g., the key length)
+     */
+    public FileFollower(Path file, int slots) {
+        this.file = file;
+        this.slots = slots;
+        this.histogram = new StreamingHistogram(slots);
+    }
+
+    /**
+     * @param pollInterval The interval between two polls in ms
+     * @return This follower
+     */
+    public FileFollower withPollInterval(long pollInterval) {
+        this.pollInterval = pollInterval;
+        return this;
+    }
+
+    /**
+     * @param topK The number of most frequent bytes per slot whose ranking is watched
+     * @return This follower
+     */
+    public FileFollower withTopK(int topK) {
+        if (topK < 1 || topK > ByteFrequencyTable.BYTE_VALUES) {
+            throw new IllegalArgumentException("K must be between 1 and " + ByteFrequencyTable.BYTE_VALUES);
+        }
+        this.topK = topK;
+        return this;
+    }
+
+    /**
+     * Reads the bytes appended since the last poll and updates the tables.
+     *
+     * @return true, if the ranking of the top K bytes of a slot has changed
+     * (always true after the first poll of a non-empty file)
+     * @throws IOException if the file cannot be read
+     */
+    public boolean poll() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < histogram.getBytesProcessed()) {
+                histogram = new StreamingHistogram(slots);
+                ranking = null;
+            }
+            long position = histogram.getBytesProcessed();
+            while (position < size) {
+                ByteBuffer block = ByteBuffer.wrap(buffer, 0, (int) Math.min(buffer.length, size - position));
+                int read = channel.read(block, position);
+                if (read <= 0) {
+                    break;
+                }
+                histogram.update(buffer, 0, read);
+                position += read;
+            }
+        }
+        if (histogram.getBytesProcessed() == 0) {
+            return false;
+        }
+        int[][] current = getRanking();
+        boolean changed = !Arrays.deepEquals(current, ranking);
+        ranking = current;
+        return changed;
+    }
+
+    /**
+     * Polls the file until stop returns true or the thread is interrupted,
+     * calling the listener after every poll that changed the ranking.
+     *
+     * @param listener Receives this follower
+     * @param stop     Tested after every poll
+     * @throws IOException if the file cannot be read
+     */
+    public void follow(Consumer<FileFollower> listener, BooleanSupplier stop) throws IOException {
+        while (true) {
+            if (poll()) {
+                listener.accept(this);
+            }
+            if (stop.getAsBoolean()) {
+                return;
+            }
+            try {
+                Thread.sleep(pollInterval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private int[][] getRanking() {
+        ByteFrequencyTable[] tables = histogram.getFrequencyTables();
+        int[][] current = new int[slots][];
+        for (int slot = 0; slot < slots; slot++) {
+            current[slot] = tables[slot].getMostFrequentBytes(topK);
+        }
+        return current;
+    }
+
+    /**
+     * @return The histogram of the bytes read so far; it changes with further polls
+     */
+    public StreamingHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * @return The mean byte-entropy of the slots
+     */
+    public double getMeanByteEntropy() {
+        double sum = 0;
+        for (ByteFrequencyTable table : histogram.getFrequencyTables()) {
+            sum += table.getByteEntropy();
+        }
+        return sum / slots;
+    }
+}
@@ -0,0 +1,267 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * This class implements the estimation of the byte frequency tables of a
+ * large file from random samples.
+ * <p>
+ * Instead of scanning the whole file, blocks at random positions are read with
+ * positional reads. Every block starts at a multiple of the key length and has
+ * a length that is a multiple of the key length, so all slots get the same
+ * number of samples. Sampling stops early as soon as the top 'depth' bytes of
+ * every slot are statistically stable, i.e., the confidence of every slot reaches
+ * the required level and the rankings did not change since the previous check.
+ * <p>
+ * The confidence of a slot is the probability that the last byte of its top
+ * 'depth' is truly more frequent than the first byte outside of it. It is
+ * estimated from the gap between their counts relative to its standard
+ * deviation, assuming Poisson-distributed counts. If the confidence of any
+ * slot is still too low when the sample limit is reached, the whole file is
+ * scanned instead. Files not larger than the sample limit are always scanned.
+ * <p>
+ * The block positions are drawn with the fixed seed {@value #SEED}, so that the
+ * same file always gives the same estimate, and thus the same candidate keys in
+ * the same order. {@link #withSeed(long)} selects other positions, e.g., a seed
+ * from {@link System#nanoTime()} for an independent estimate.
+ */
+public class FrequencySampler {
+    /**
+     * Default size of the sampled blocks.
+     */
+    public static final int BLOCK_SIZE = 64 * 1024;
+    /**
+     * Default maximum number of bytes sampled before falling back to a full scan.
+     */
+    public static final long MAX_SAMPLE_BYTES = 16L << 20;
+    /**
+     * Default confidence required for every slot.
+     */
+    public static final double CONFIDENCE = 0.99;
+    /**
+     * Default seed of the random block positions.
+     */
+    public static final long SEED = 0;
+    private static final int CHECK_INTERVAL = 4; // blocks between two stability checks
+
+    private final int keylength;
+    private final int depth;
+    private long maxSampleBytes = MAX_SAMPLE_BYTES;
+    private double confidence = CONFIDENCE;
+    private long seed = SEED;
+
+    /**
+     * The estimated tables and their confidence.
+     */
+    public static class Estimate {
+        private final PackedFrequencyTables tables;
+        private final double[] confidence;
+        private final long bytesRead;
+        private final boolean fullScan;
+
+        Estimate(PackedFrequencyTables tables, double[] confidence, long bytesRead, boolean fullScan) {
+            this.tables = tables;
+            this.confidence = confidence;
+            this.bytesRead = bytesRead;
+            this.fullScan = fullScan;
+        }
+
+        /**
+         * @return The byte frequency tables, one per key byte
+         */
+        public ByteFrequencyTable[] getFrequencyTables() {
+            return tables.getTables();
+        }
+
+        /**
+         * @return The confidence of every slot (between 0.5 and 1)
+         */
+        public double[] getConfidence() {
+            return confidence.clone();
+        }
+
+        /**
+         * @return The lowest confidence of all slots
+         */
+        public double getMinConfidence() {
+            return Arrays.stream(confidence).min().orElse(1);
+        }
+
+        /**
+         * @return The number of bytes read (sampled or scanned)
+         */
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        /**
+         * @return true, if the whole file has been scanned
+         */
+        public boolean isFullScan() {
+            return fullScan;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param keylength The length of the key in bytes
+     * @param depth     The number of most frequent bytes per slot that must be stable
+     */
+    public FrequencySampler(int keylength, int depth) {
+        if (keylength < 1 || depth < 1 || depth >= ByteFrequencyTable.BYTE_VALUES) {
+            throw new IllegalArgumentException("Invalid key length or depth");
+        }
+        this.keylength = keylength;
+        this.depth = depth;
+    }
+
+    /**
+     * @param maxSampleBytes The maximum number of bytes sampled before falling back to a full scan
+     * @return This sampler
+     */
+    public FrequencySampler withMaxSampleBytes(long maxSampleBytes) {
+        this.maxSampleBytes = maxSampleBytes;
+        return this;
+    }
+
+    /**
+     * @param confidence The confidence required for every slot
+     * @return This sampler
+     */
+    public FrequencySampler withConfidence(double confidence) {
+        this.confidence = confidence;
+        return this;
+    }
+
+    /**
+     * @param seed The seed of the random block positions (default {@value #SEED})
+     * @return This sampler
+     */
+    public FrequencySampler withSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Estimates the byte frequency tables of the file.
+     *
+     * @param file The file
+     * @return The estimate
+     * @throws IOException if reading the file fails
+     */
+    public Estimate estimate(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > maxSampleBytes) {
+                Estimate estimate = sample(channel, size);
+                if (estimate.getMinConfidence() >= confidence) {
+                    return estimate;
+                }
+            }
+            return scan(channel, size);
+        }
+    }
+
+    private Estimate sample(FileChannel channel, long size) throws IOException {
+        int blockSize = Math.max(1, BLOCK_SIZE / keylength) * keylength;
+        long blocks = (size + blockSize - 1) / blockSize;
+        long maxBlocks = Math.min(blocks, Math.max(1, maxSampleBytes / blockSize));
+        PackedFrequencyTables tables = new PackedFrequencyTables(keylength);
+        ByteBuffer buffer = ByteBuffer.allocate(blockSize);
+        Random random = new Random(seed);
+        Set<Long> sampled = new HashSet<>();
+        int[][] previous = null;
+        long bytesRead = 0;
+        while (sampled.size() < maxBlocks) {
+            long block = (long) (random.nextDouble() * blocks);
+            if (!sampled.add(block)) {
+                continue;
+            }
+            bytesRead += readFully(channel, buffer, block * blockSize);
+            tables.addBytes(buffer.array(), 0, buffer.position(), 0);
+            if (sampled.size() % CHECK_INTERVAL == 0) {
+                int[][] ranking = getRanking(tables);
+                if (Arrays.deepEquals(ranking, previous) && min(getConfidence(tables)) >= confidence) {
+                    break;
+                }
+                previous = ranking;
+            }
+        }
+        return new Estimate(tables, getConfidence(tables), bytesRead, false);
+    }
+
+    private Estimate scan(FileChannel channel, long size) throws IOException {
+        PackedFrequencyTables tables = new PackedFrequencyTables(keylength);
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        long position = 0;
+        while (position < size) {
+            int read = readFully(channel, buffer, position);
+            if (read == 0) {
+                break;
+            }
+            tables.addBytes(buffer.array(), 0, read, position);
+            position += read;
+        }
+        return new Estimate(tables, getConfidence(tables), position, true);
+    }
+
+    /**
+     * Reads from the position until the buffer is full or the end of the file is reached.
+     *
+     * @return The number of bytes read
+     */
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read == -1) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    private int[][] getRanking(PackedFrequencyTables tables) {
+        int[][] ranking = new int[keylength][];
+        for (int slot = 0; slot < keylength; slot++) {
+            ranking[slot] = tables.getMostFrequentBytes(slot, depth);
+        }
+        return ranking;
+    }
+
+    private double[] getConfidence(PackedFrequencyTables tables) {
+        double[] result = new double[keylength];
+        for (int slot = 0; slot < keylength; slot++) {
+            int[] top = tables.getMostFrequentBytes(slot, depth + 1);
+            long last = tables.getCount(slot, top[depth - 1]);
+            long next = tables.getCount(slot, top[depth]);
+            result[slot] = last + next == 0 ? 0.5 : normalCdf((last - next) / Math.sqrt(last + next));
+        }
+        return result;
+    }
+
+    private static double min(double[] values) {
+        return Arrays.stream(values).min().orElse(1);
+    }
+
+    /**
+     * Cumulative distribution function of the standard normal distribution
+     * (Abramowitz and Stegun 7.1.26, absolute error below 1.5e-7).
+     */
+    static double normalCdf(double z) {
+        double x = Math.abs(z) / Math.sqrt(2);
+        double t = 1 / (1 + 0.3275911 * x);
+        double erf = 1 - ((((1.061405429 * t - 1.453152027) * t + 1.421413741) * t - 0.284496736) * t
+                + 0.254829592) * t * Math.exp(-x * x);
+        return z >= 0 ? 0.5 * (1 + erf) : 0.5 * (1 - erf);
+    }
+}
@@ -0,0 +1,135 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * This class implements a cache of the slotted byte frequency tables of whole
+ * files, shared by all jobs of a JVM (e.g., of the daemon, see CrackerDaemonApp).
+ * <p>
+ * An entry is identified by the absolute path of the file, its size, its time
+ * of last modification and the number of slots, so a file that has been
+ * changed is read again. At most {@value #MAX_ENTRIES} entries are kept; the
+ * least recently used entry is evicted first. An entry takes
+ * slots * 256 counters, independent of the size of the file.
+ * <p>
+ * The tables returned are shared between callers and must not be modified.
+ * Two jobs asking for the same missing entry at the same time may both read
+ * the file; the lock is not held while reading.
+ */
+public class FrequencyTableCache {
+    /**
+     * Maximum number of cached entries.
+     */
+    public static final int MAX_ENTRIES = 64;
+
+    private static final FrequencyTableCache SHARED = new FrequencyTableCache(MAX_ENTRIES);
+
+    private final Map<Key, PackedFrequencyTables> entries;
+    private long hits;
+    private long misses;
+
+    private static final class Key {
+        private final Path file;
+        private final long size;
+        private final long lastModified;
+        private final int slots;
+
+        private Key(Path file, BasicFileAttributes attributes, int slots) {
+            this.file = file;
+            this.size = attributes.size();
+            this.lastModified = attributes.lastModifiedTime().toMillis();
+            this.slots = slots;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return file.equals(other.file) && size == other.size && lastModified == other.lastModified
+                    && slots == other.slots;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(file, size, lastModified, slots);
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxEntries The maximum number of cached entries
+     */
+    public FrequencyTableCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache must hold at least 1 entry");
+        }
+        this.entries = new LinkedHashMap<Key, PackedFrequencyTables>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PackedFrequencyTables> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return The cache shared by all jobs of this JVM
+     */
+    public static FrequencyTableCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the tables of the file, reading the file only if they are not cached.
+     *
+     * @param file  The file
+     * @param slots The number of slots (e.g., the key length)
+     * @return The tables, one per slot; they must not be modified
+     * @throws IOException if the file cannot be read
+     */
+    public ByteFrequencyTable[] getFrequencyTables(Path file, int slots) throws IOException {
+        Path absolute = file.toAbsolutePath().normalize();
+        Key key = new Key(absolute, Files.readAttributes(absolute, BasicFileAttributes.class), slots);
+        PackedFrequencyTables tables;
+        synchronized (this) {
+            tables = entries.get(key);
+            if (tables != null) {
+                hits++;
+                return tables.getTables();
+            }
+            misses++;
+        }
+        StreamingHistogram histogram = new StreamingHistogram(slots);
+        try (InputStream in = Files.newInputStream(absolute)) {
+            histogram.process(in, Long.MAX_VALUE, null);
+        }
+        tables = histogram.getPackedFrequencyTables();
+        synchronized (this) {
+            entries.put(key, tables);
+        }
+        return tables.getTables();
+    }
+
+    /**
+     * @return The number of requests answered from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of requests that read the file
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
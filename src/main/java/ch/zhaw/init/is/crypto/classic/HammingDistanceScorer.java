@@ -0,0 +1,117 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+/**
+ * This class implements the scoring of key lengths of data encrypted with the
+ * XOR method by the normalized Hamming distance.
+ * <p>
+ * For a candidate key length L, every byte is compared with the byte L positions
+ * further, i.e., every block of L bytes with the following block. With the true
+ * key length (or a multiple of it), both bytes are encrypted with the same key
+ * byte, which cancels out in their XOR, so the distance is the one of the
+ * plaintext bytes (e.g., below 3 bits per byte for text). With a wrong key
+ * length, the XOR of two different key bytes remains and the distance
+ * approaches the 4 bits per byte of random data.
+ * <p>
+ * The distances are computed 64 bits at a time: 8-byte words are read from
+ * the data and the data shifted by L, XOR-ed and counted with
+ * {@link Long#bitCount(long)}, which the JIT compiler turns into a single
+ * instruction. The key lengths are scored in parallel. Files are memory-mapped,
+ * and only the first {@value #MAX_COMPARED_BYTES} bytes (by default) are compared.
+ */
+public class HammingDistanceScorer {
+    /**
+     * Default maximum number of bytes compared per key length.
+     */
+    public static final int MAX_COMPARED_BYTES = 1 << 23;
+    /**
+     * Score of a key length without bytes to compare (the normalized distance of random data).
+     */
+    public static final double NO_INFORMATION = 0.5;
+
+    private final int maxKeylength;
+    private int maxComparedBytes = MAX_COMPARED_BYTES;
+
+    /**
+     * Constructor.
+     *
+     * @param maxKeylength The maximum key length to score
+     */
+    public HammingDistanceScorer(int maxKeylength) {
+        if (maxKeylength < 1) {
+            throw new IllegalArgumentException("Maximum key length must be at least 1");
+        }
+        this.maxKeylength = maxKeylength;
+    }
+
+    /**
+     * @param maxComparedBytes The maximum number of bytes compared per key length
+     * @return This scorer
+     */
+    public HammingDistanceScorer withMaxComparedBytes(int maxComparedBytes) {
+        if (maxComparedBytes < 1) {
+            throw new IllegalArgumentException("Number of compared bytes must be at least 1");
+        }
+        this.maxComparedBytes = maxComparedBytes;
+        return this;
+    }
+
+    /**
+     * Computes the scores of the data.
+     *
+     * @param data The encrypted data
+     * @return The scores (normalized Hamming distances between 0 and 1), indexed by
+     * key length (index 0 is unused); lower is better
+     */
+    public double[] getScores(byte[] data) {
+        return getScores(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Computes the scores of the content of the file, which is memory-mapped.
+     *
+     * @param file The encrypted file
+     * @return The scores, see {@link #getScores(byte[])}
+     * @throws IOException if the file cannot be read
+     */
+    public double[] getScores(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = Math.min(channel.size(), (long) maxComparedBytes + maxKeylength);
+            return getScores(channel.map(FileChannel.MapMode.READ_ONLY, 0, length));
+        }
+    }
+
+    private double[] getScores(ByteBuffer data) {
+        double[] scores = new double[maxKeylength + 1];
+        scores[0] = Double.NaN;
+        IntStream.rangeClosed(1, maxKeylength).parallel()
+                .forEach(keylength -> scores[keylength] = getScore(data, keylength));
+        return scores;
+    }
+
+    /**
+     * @return The number of differing bits between the data and the data shifted by the
+     * key length, divided by the number of compared bits
+     */
+    private double getScore(ByteBuffer data, int keylength) {
+        int compared = Math.min(data.limit() - keylength, maxComparedBytes);
+        if (compared <= 0) {
+            return NO_INFORMATION;
+        }
+        long bits = 0;
+        int words = compared - compared % Long.BYTES;
+        for (int position = 0; position < words; position += Long.BYTES) {
+            bits += Long.bitCount(data.getLong(position) ^ data.getLong(position + keylength));
+        }
+        for (int position = words; position < compared; position++) {
+            bits += Integer.bitCount((data.get(position) ^ data.get(position + keylength)) & 0xFF);
+        }
+        return bits / (double) (Byte.SIZE * (long) compared);
+    }
+}
@@ -0,0 +1,158 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import ch.zhaw.init.is.util.CpuQuota;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class implements the aggregation of the byte frequency tables of many
+ * files encrypted with the XOR method with the same key.
+ * <p>
+ * Every file contributes its bytes to the slots of the key they were
+ * encrypted with. By default, the first byte of a file is assumed to be
+ * encrypted with the first key byte; a known phase (the index of the key byte
+ * of the first byte of the file) shifts the slots accordingly. The sum of the
+ * tables of all files is equal to the tables of the concatenation of all files
+ * (each starting at its phase), so a key can be recovered from many files
+ * that are individually too small for a reliable frequency analysis.
+ * <p>
+ * The files are processed in parallel; every worker adds the files it reads to
+ * tables of its own, which are merged at the end. Files are read in blocks of
+ * {@value #BUFFER_SIZE} bytes, so the memory used depends neither on the size
+ * nor on the number of the files.
+ */
+public class HistogramAggregator {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final int keylength;
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder filesRead = new LongAdder();
+    private int parallelism = CpuQuota.getAvailableProcessors();
+
+    /**
+     * An encrypted file and the phase of its first byte.
+     */
+    public static class Input {
+        private final Path file;
+        private final int phase;
+
+        /**
+         * @param file  The encrypted file
+         * @param phase The index of the key byte its first byte was encrypted with
+         */
+        public Input(Path file, int phase) {
+            if (phase < 0) {
+                throw new IllegalArgumentException("Phase must not be negative");
+            }
+            this.file = file;
+            this.phase = phase;
+        }
+
+        /**
+         * @param file The encrypted file, whose first byte was encrypted with the first key byte
+         */
+        public Input(Path file) {
+            this(file, 0);
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public int getPhase() {
+            return phase;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param keylength The length of the key in bytes
+     */
+    public HistogramAggregator(int keylength) {
+        if (keylength < 1) {
+            throw new IllegalArgumentException("Key length must be at least 1");
+        }
+        this.keylength = keylength;
+    }
+
+    /**
+     * @param parallelism The number of threads reading files
+     * @return This aggregator
+     */
+    public HistogramAggregator withParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Aggregates the byte frequency tables of the files.
+     *
+     * @param inputs The encrypted files
+     * @return The sum of the tables of all files, one slot per key byte
+     * @throws IOException if a file cannot be read
+     */
+    public PackedFrequencyTables aggregate(List<Input> inputs) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.submit(() -> inputs.parallelStream().collect(
+                    () -> new PackedFrequencyTables(keylength),
+                    this::add,
+                    PackedFrequencyTables::merge)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Aggregation interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Adds the bytes of the file to the tables.
+     */
+    private void add(PackedFrequencyTables tables, Input input) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long position = input.phase;
+        try (InputStream in = Files.newInputStream(input.file)) {
+            int length;
+            while ((length = in.read(buffer)) > 0) {
+                tables.addBytes(buffer, 0, length, position);
+                position += length;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        bytesRead.add(position - input.phase);
+        filesRead.increment();
+    }
+
+    /**
+     * @return The number of bytes read so far
+     */
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * @return The number of files read so far
+     */
+    public long getFilesRead() {
+        return filesRead.sum();
+    }
+}
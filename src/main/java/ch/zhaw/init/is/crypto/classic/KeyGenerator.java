@@ -0,0 +1,347 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import java.util.Arrays;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.util.Spliterator.DISTINCT;
+import static java.util.Spliterator.NONNULL;
+
+/**
+ * Helper class to generate different candidate keys. It is based on the
+ * assumption that when generating the byte frequency distributions per key
+ * byte from the ciphertext, then the most frequent byte in the compressed
+ * plaintext should correspond to one of the most frequent bytes in all of the
+ * byte frequency distributions generated from the ciphertext.
+ *
+ * @author tebe
+ */
+class KeyGenerator {
+    /**
+     * The order in which the candidate keys are generated.
+     */
+    enum Order {
+        /**
+         * Odometer order, see {@link #updateCandidateCombination()}.
+         */
+        ODOMETER,
+        /**
+         * Best-first order, see {@link #updateCandidateCombinationBestFirst()}.
+         */
+        BEST_FIRST
+    }
+
+    private int[][] keyBytes;
+    private long[][] passMasks;
+    private int[] numberOfCandidates;
+    private int[] currentCandidateCombination;
+    private boolean allCandidatesTested;
+    private int mostFrequentByteInPlaintext;
+    private Order order;
+    private int currentRankSum;
+    private long numberOfKeysGenerated;
+    private long numberOfKeysRejected;
+
+    /**
+     * Constructor. It generates a 2D array with size keylength *
+     * numberOfCandidatesPerKeyByte and stores it in the variable keyBytes.
+     * For each of the key bytes, the array contains the numberOfCandidatesPerKeyByte
+     * most frequent ciphertext bytes, already XOR-ed with the assumed most frequent
+     * byte in the plaintext. This 2D array is then used as the basis to
+     * determine different candidate keys by using the other methods in this class.
+     * <p>
+     * The next combination of the ciphertext bytes to be tested is determined by
+     * the value of the array currentCandidateCombination (see method
+     * getNextCandidatedKey below). The constructor creates this array and sets it
+     * to [0 0 0 0 0 0] (assuming a keylength of 6).
+     *
+     * @param frequencyTable               The frequency table (per key byte) of the ciphertext
+     * @param numberOfCandidatesPerKeyByte The number of candidates to consider per key byte
+     *                                     (e.g. if equal to 4, then the 4 most frequent ciphertext
+     *                                     bytes are considered per key byte)
+     * @param mostFrequentByte             The assumed most frequent byte in the plaintext
+     */
+    public KeyGenerator(ByteFrequencyTable[] frequencyTable,
+                        int numberOfCandidatesPerKeyByte, int mostFrequentByte) {
+        this(frequencyTable, numberOfCandidatesPerKeyByte, mostFrequentByte, Order.ODOMETER);
+    }
+
+    /**
+     * Constructor. Same as {@link #KeyGenerator(ByteFrequencyTable[], int, int)},
+     * but the candidate keys are generated in the specified order.
+     *
+     * @param frequencyTable               The frequency table (per key byte) of the ciphertext
+     * @param numberOfCandidatesPerKeyByte The number of candidates to consider per key byte
+     * @param mostFrequentByte             The assumed most frequent byte in the plaintext
+     * @param order                        The order in which the candidate keys are generated
+     */
+    public KeyGenerator(ByteFrequencyTable[] frequencyTable,
+                        int numberOfCandidatesPerKeyByte, int mostFrequentByte, Order order) {
+        this(frequencyTable, numberOfCandidatesPerKeyByte, mostFrequentByte, order, null, null);
+    }
+
+    /**
+     * Constructor. Same as {@link #KeyGenerator(ByteFrequencyTable[], int, int, Order)},
+     * but only keys satisfying the known plaintext are generated.
+     * <p>
+     * For every key byte, the candidate key bytes (the candidate ciphertext bytes
+     * XOR-ed with the assumed most frequent byte) are computed once, together with
+     * the mask of the alternatives of the known plaintext each of them satisfies.
+     * Candidates satisfying no alternative are removed before the enumeration
+     * starts, so the key bytes may have different numbers of candidates. During
+     * the enumeration, a key is skipped if the AND of the masks of its key bytes
+     * is zero.
+     *
+     * @param frequencyTable               The frequency table (per key byte) of the ciphertext
+     * @param numberOfCandidatesPerKeyByte The number of candidates to consider per key byte
+     * @param mostFrequentByte             The assumed most frequent byte in the plaintext
+     * @param order                        The order in which the candidate keys are generated
+     * @param knownPlaintext               The known plaintext or null, if there is none
+     * @param ciphertext                   The ciphertext the known plaintext refers to
+     */
+    public KeyGenerator(ByteFrequencyTable[] frequencyTable, int numberOfCandidatesPerKeyByte,
+                        int mostFrequentByte, Order order, KnownPlaintext knownPlaintext, byte[] ciphertext) {
+        this.order = order;
+        this.mostFrequentByteInPlaintext = mostFrequentByte;
+        keyBytes = new int[frequencyTable.length][];
+        numberOfCandidates = new int[frequencyTable.length];
+        currentCandidateCombination = new int[frequencyTable.length];
+        if (knownPlaintext != null) {
+            passMasks = new long[frequencyTable.length][];
+        }
+
+        // Creates the 2D array which contains the key bytes of the
+        // numberOfCandidatesPerKeyByte most frequent ciphertext bytes per key byte.
+        for (int keyIndex = 0; keyIndex < frequencyTable.length; keyIndex++) {
+            int[] candidates = frequencyTable[keyIndex].getMostFrequentBytes(numberOfCandidatesPerKeyByte);
+            for (int rank = 0; rank < candidates.length; rank++) {
+                candidates[rank] ^= mostFrequentByteInPlaintext;
+            }
+            if (knownPlaintext != null) {
+                long[] masks = knownPlaintext.getPassMasks(ciphertext, frequencyTable.length, keyIndex, candidates);
+                int possible = 0;
+                for (int rank = 0; rank < candidates.length; rank++) {
+                    if (masks[rank] != 0) {
+                        candidates[possible] = candidates[rank];
+                        masks[possible++] = masks[rank];
+                    }
+                }
+                candidates = Arrays.copyOf(candidates, possible);
+                passMasks[keyIndex] = Arrays.copyOf(masks, possible);
+            }
+            keyBytes[keyIndex] = candidates;
+            numberOfCandidates[keyIndex] = candidates.length;
+            if (candidates.length == 0) {
+                allCandidatesTested = true;
+            }
+        }
+    }
+
+    /**
+     * Constructor for candidate key bytes that have been chosen beforehand,
+     * e.g., with some key bytes fixed to a single value.
+     *
+     * @param keyBytes The candidate key bytes per key byte in the order of their rank
+     * @param order    The order in which the candidate keys are generated
+     */
+    KeyGenerator(int[][] keyBytes, Order order) {
+        this.order = order;
+        this.keyBytes = keyBytes;
+        numberOfCandidates = new int[keyBytes.length];
+        currentCandidateCombination = new int[keyBytes.length];
+        for (int keyIndex = 0; keyIndex < keyBytes.length; keyIndex++) {
+            numberOfCandidates[keyIndex] = keyBytes[keyIndex].length;
+            if (keyBytes[keyIndex].length == 0) {
+                allCandidatesTested = true;
+            }
+        }
+    }
+
+    /**
+     * Returns the next candidate key. To do this, the current value of
+     * currentCandidateCombination is taken to determine the next combination of
+     * ciphertext bytes to be tested. For instance (assuming a keylength of 6),
+     * if currentCandidateCombination corresponds to [0 3 1 3 0 2], this means that
+     * for the first ciphertext byte, the most frequent byte is taken, for the second
+     * ciphertext byte, the 4th-most frequent byte is chosen, for the third ciphertext
+     * byte, the 2nd-most frequent byte is chosen and so on.
+     * <p>
+     * The corresponding candidate key is then looked up in keyBytes, where these
+     * ciphertext bytes have been XOR-ed with the assumed most frequent value in the
+     * plaintext beforehand. Combinations not satisfying the known plaintext are skipped.
+     *
+     * @return The candidate key or null if all candidate keys have been returned
+     */
+    public int[] getNextCandidateKey() {
+        while (!allCandidatesTested && !isPossible(currentCandidateCombination)) {
+            numberOfKeysRejected++;
+            updateCandidateCombination(order);
+        }
+        if (allCandidatesTested) {
+            return null;
+        }
+        int[] key = new int[keyBytes.length];
+        for (int keyByte = 0; keyByte < key.length; keyByte++) {
+            key[keyByte] = keyBytes[keyByte][currentCandidateCombination[keyByte]];
+        }
+        updateCandidateCombination(order);
+        numberOfKeysGenerated++;
+        return key;
+    }
+
+    /**
+     * @return true, if the combination satisfies an alternative of the known plaintext
+     */
+    private boolean isPossible(int[] combination) {
+        if (passMasks == null) {
+            return true;
+        }
+        long mask = -1L;
+        for (int keyByte = 0; keyByte < combination.length && mask != 0; keyByte++) {
+            mask &= passMasks[keyByte][combination[keyByte]];
+        }
+        return mask != 0;
+    }
+
+    private void updateCandidateCombination(Order order) {
+        if (order == Order.BEST_FIRST) {
+            updateCandidateCombinationBestFirst();
+        } else {
+            updateCandidateCombination();
+        }
+    }
+
+    /**
+     * @return The number of combinations skipped because they do not satisfy the known plaintext
+     */
+    public long getNumberOfKeysRejected() {
+        return numberOfKeysRejected;
+    }
+
+    /**
+     * @return The candidate key bytes per key byte in the order of their rank,
+     * without the ones removed by the known plaintext
+     */
+    int[][] getKeyBytes() {
+        return keyBytes;
+    }
+
+    /**
+     * @return The number of candidate keys this generator produces overall
+     * (saturated at Long.MAX_VALUE); with known plaintext, keys rejected by the
+     * AND of the masks are included
+     */
+    public long getNumberOfKeys() {
+        long numberOfKeys = 1;
+        for (int i = 0; i < numberOfCandidates.length; i++) {
+            if (numberOfCandidates[i] == 0) {
+                return 0;
+            }
+            if (numberOfKeys > Long.MAX_VALUE / numberOfCandidates[i]) {
+                return Long.MAX_VALUE;
+            }
+            numberOfKeys *= numberOfCandidates[i];
+        }
+        return numberOfKeys;
+    }
+
+    public Stream<int[]> getKeyStream() {
+        return getKeyStream(generated -> false);
+    }
+
+    /**
+     * Returns a stream of the remaining candidate keys that ends early as soon as
+     * the stop condition holds.
+     *
+     * @param stop Stop condition, tested with the number of keys generated so far
+     *             before each further key is generated
+     * @return The stream of candidate keys
+     */
+    public Stream<int[]> getKeyStream(LongPredicate stop) {
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<int[]>(Long.MAX_VALUE, DISTINCT | NONNULL) {
+            @Override public boolean tryAdvance(Consumer<? super int[]> action) {
+                if (allCandidatesTested || stop.test(numberOfKeysGenerated)) return false;
+                int[] key = getNextCandidateKey();
+
+                if (key == null) return false;
+                else action.accept(key);
+
+                return true;
+            }
+        }, true);
+    }
+
+
+    /**
+     * Switches to the next combination of ciphertext bytes to be tested by updating
+     * currentCandidateCombination. With each call of the method, the next combination
+     * is determined based on the current combination. For instance (assuming a keylength
+     * of 6 and numberOfCandidatesPerKeyByte = 4), the sequence is [0 0 0 0 0 0],
+     * [0 0 0 0 0 1], [0 0 0 0 0 2], [0 0 0 0 0 3], [0 0 0 0 1 0], [0 0 0 0 1 1] and so on.
+     * Overall, all possible combinations from [0 0 0 0 0 0] to [3 3 3 3 3 3] will be used
+     * exactly once, which guarantees that all combinations will be tested.
+     */
+    private void updateCandidateCombination() {
+        int index = currentCandidateCombination.length - 1;
+        while (index >= 0
+                && currentCandidateCombination[index] == numberOfCandidates[index] - 1) {
+            currentCandidateCombination[index] = 0;
+            index--;
+        }
+        if (index < 0) {
+            allCandidatesTested = true;
+        } else {
+            currentCandidateCombination[index]++;
+        }
+    }
+
+    /**
+     * Switches to the next combination of ciphertext bytes in best-first order.
+     * Combinations are ordered by the sum of their ranks, so that combinations of
+     * the most frequent ciphertext bytes come first: [0 0 0], then all combinations
+     * with rank sum 1 ([0 0 1], [0 1 0], [1 0 0]), then those with rank sum 2 and so on.
+     * Within the same rank sum, the combinations are in lexicographic order. As with
+     * {@link #updateCandidateCombination()}, every combination is used exactly once.
+     */
+    private void updateCandidateCombinationBestFirst() {
+        int[] combination = currentCandidateCombination;
+        int suffixSum = combination[combination.length - 1];
+        for (int index = combination.length - 2; index >= 0; index--) {
+            if (suffixSum > 0 && combination[index] < numberOfCandidates[index] - 1) {
+                combination[index]++;
+                fillFromRight(combination, index + 1, suffixSum - 1);
+                return;
+            }
+            suffixSum += combination[index];
+        }
+        currentRankSum++;
+        if (currentRankSum > getMaxRankSum()) {
+            allCandidatesTested = true;
+        } else {
+            fillFromRight(combination, 0, currentRankSum);
+        }
+    }
+
+    /**
+     * Sets the positions from..end of the combination to the lexicographically
+     * smallest ranks summing up to rankSum.
+     */
+    private void fillFromRight(int[] combination, int from, int rankSum) {
+        for (int index = combination.length - 1; index >= from; index--) {
+            combination[index] = Math.min(rankSum, numberOfCandidates[index] - 1);
+            rankSum -= combination[index];
+        }
+    }
+
+    private int getMaxRankSum() {
+        int maxRankSum = 0;
+        for (int count : numberOfCandidates) {
+            maxRankSum += count - 1;
+        }
+        return maxRankSum;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,112 @@
+package ch.zhaw.init.is.crypto.classic;
+
+/**
+ * This class implements the detection of the key length of data that has
+ * been encrypted with the XOR method.
+ * <p>
+ * For each candidate key length, the data is split into one slot per key byte
+ * and the mean byte-entropy of the slots is computed. With the true key length
+ * (or a multiple of it), every slot is encrypted with a single key byte and
+ * keeps the skewed distribution of the plaintext, so the mean entropy is low.
+ * With a wrong key length, the slots mix several key bytes and the entropy rises.
+ * Since multiples of the key length score as well as the key length itself, and
+ * long key lengths additionally profit from the smaller samples per slot, the
+ * shortest length that scores close to the best one is chosen.
+ */
+public class KeyLengthDetector {
+    /**
+     * Share of the gap between the best and the average score within which a
+     * shorter key length is preferred over the best one.
+     */
+    private static final double TOLERANCE = 0.5;
+
+    private KeyLengthDetector() {
+    }
+
+    /**
+     * Computes the score (mean byte-entropy of the slots) of every key length.
+     *
+     * @param data         The encrypted data
+     * @param maxKeylength The maximum key length to consider
+     * @return The scores, indexed by key length (index 0 is unused); lower is better
+     */
+    public static double[] getScores(byte[] data, int maxKeylength) {
+        double[] scores = new double[maxKeylength + 1];
+        scores[0] = Double.NaN;
+        for (int keylength = 1; keylength <= maxKeylength; keylength++) {
+            PackedFrequencyTables tables = new PackedFrequencyTables(keylength);
+            tables.addBytes(data, 0, data.length, 0);
+            double sum = 0;
+            for (double entropy : tables.getByteEntropies()) {
+                sum += entropy;
+            }
+            scores[keylength] = sum / keylength;
+        }
+        return scores;
+    }
+
+    /**
+     * Combines the scores of several methods, e.g., of {@link #getScores} and of
+     * {@link HammingDistanceScorer}, into one. The scores of each method are divided
+     * by their mean over all key lengths, so that each method contributes its
+     * relative contrast between the key lengths, and the results are averaged.
+     *
+     * @param scores The scores of each method, indexed by key length; lower is better
+     * @return The combined scores, indexed by key length (index 0 is unused); lower is better
+     */
+    public static double[] combineScores(double[]... scores) {
+        int length = scores[0].length;
+        double[] combined = new double[length];
+        combined[0] = Double.NaN;
+        for (double[] method : scores) {
+            if (method.length != length) {
+                throw new IllegalArgumentException("All methods must score the same key lengths");
+            }
+            double mean = 0;
+            for (int keylength = 1; keylength < length; keylength++) {
+                mean += method[keylength];
+            }
+            mean /= length - 1;
+            for (int keylength = 1; keylength < length; keylength++) {
+                combined[keylength] += (mean == 0 ? 1 : method[keylength] / mean) / scores.length;
+            }
+        }
+        return combined;
+    }
+
+    /**
+     * Determines the most likely key length from the scores of {@link #getScores}.
+     *
+     * @param scores The scores, indexed by key length
+     * @return The most likely key length
+     */
+    public static int getKeyLength(double[] scores) {
+        int best = 1;
+        double mean = 0;
+        for (int keylength = 1; keylength < scores.length; keylength++) {
+            mean += scores[keylength];
+            if (scores[keylength] < scores[best]) {
+                best = keylength;
+            }
+        }
+        mean /= scores.length - 1;
+        double threshold = scores[best] + TOLERANCE * (mean - scores[best]);
+        for (int keylength = 1; keylength < best; keylength++) {
+            if (scores[keylength] <= threshold) {
+                return keylength;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Determines the most likely key length of the data.
+     *
+     * @param data         The encrypted data
+     * @param maxKeylength The maximum key length to consider
+     * @return The most likely key length
+     */
+    public static int detectKeyLength(byte[] data, int maxKeylength) {
+        return getKeyLength(getScores(data, maxKeylength));
+    }
+}
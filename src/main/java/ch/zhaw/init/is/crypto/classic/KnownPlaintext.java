@@ -0,0 +1,159 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class implements constraints on the plaintext at known positions,
+ * e.g., the magic bytes and fixed fields of a file header.
+ * <p>
+ * The constraints are grouped into alternatives (at most {@value #MAX_ALTERNATIVES}),
+ * e.g., one per possible file format. A key is possible if it satisfies all
+ * constraints of at least one alternative. Since every constraint concerns
+ * a single position, it only depends on the key byte of the slot of that
+ * position (position modulo the key length). Thus, whether a key byte
+ * satisfies the constraints of each alternative can be precomputed per slot
+ * as a bit mask, and a whole key is possible if the AND of the masks of its
+ * key bytes is not zero (see {@link KeyGenerator}).
+ */
+public class KnownPlaintext {
+    /**
+     * Maximum number of alternatives (bits of a mask).
+     */
+    public static final int MAX_ALTERNATIVES = Long.SIZE;
+    private static final int ZIP_MAX_VERSION = 63;
+
+    private final List<List<Constraint>> alternatives = new ArrayList<>();
+
+    /**
+     * The set of allowed plaintext values at one position.
+     */
+    private static class Constraint {
+        final int position;
+        final boolean[] allowed = new boolean[ByteFrequencyTable.BYTE_VALUES];
+
+        Constraint(int position) {
+            this.position = position;
+        }
+    }
+
+    /**
+     * Adds a new alternative without constraints.
+     *
+     * @return The index of the alternative
+     * @throws IllegalStateException if there are already {@value #MAX_ALTERNATIVES} alternatives
+     */
+    public int addAlternative() {
+        if (alternatives.size() == MAX_ALTERNATIVES) {
+            throw new IllegalStateException("At most " + MAX_ALTERNATIVES + " alternatives are supported");
+        }
+        alternatives.add(new ArrayList<>());
+        return alternatives.size() - 1;
+    }
+
+    /**
+     * @return The number of alternatives
+     */
+    public int getNumberOfAlternatives() {
+        return alternatives.size();
+    }
+
+    /**
+     * Requires the plaintext byte at the position to be one of the values.
+     *
+     * @param alternative   The index of the alternative
+     * @param position      The position in the plaintext
+     * @param allowedValues The allowed values
+     * @return This object
+     */
+    public KnownPlaintext require(int alternative, int position, int... allowedValues) {
+        Constraint constraint = new Constraint(position);
+        for (int value : allowedValues) {
+            constraint.allowed[value & 0xFF] = true;
+        }
+        alternatives.get(alternative).add(constraint);
+        return this;
+    }
+
+    /**
+     * Requires the plaintext byte at the position to be within the range.
+     *
+     * @param alternative The index of the alternative
+     * @param position    The position in the plaintext
+     * @param min         The smallest allowed value
+     * @param max         The largest allowed value
+     * @return This object
+     */
+    public KnownPlaintext requireRange(int alternative, int position, int min, int max) {
+        Constraint constraint = new Constraint(position);
+        for (int value = min; value <= max; value++) {
+            constraint.allowed[value] = true;
+        }
+        alternatives.get(alternative).add(constraint);
+        return this;
+    }
+
+    /**
+     * Requires the plaintext to contain the bytes at the offset.
+     *
+     * @param alternative The index of the alternative
+     * @param offset      The position of the first byte in the plaintext
+     * @param bytes       The bytes
+     * @return This object
+     */
+    public KnownPlaintext requireBytes(int alternative, int offset, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            require(alternative, offset + i, bytes[i]);
+        }
+        return this;
+    }
+
+    /**
+     * @return The constraints of the local file header at the beginning of a ZIP
+     * file: the signature, the version needed to extract and the compression
+     * method (stored or deflated)
+     */
+    public static KnownPlaintext zipLocalHeader() {
+        KnownPlaintext zip = new KnownPlaintext();
+        int header = zip.addAlternative();
+        zip.requireBytes(header, 0, new byte[]{0x50, 0x4B, 0x03, 0x04});
+        zip.requireRange(header, 4, 0, ZIP_MAX_VERSION);
+        zip.require(header, 5, 0);
+        zip.require(header, 8, 0, 8);
+        zip.require(header, 9, 0);
+        return zip;
+    }
+
+    /**
+     * Computes for every candidate key byte of a slot, which alternatives it satisfies.
+     * Constraints beyond the end of the ciphertext are ignored.
+     *
+     * @param ciphertext The encrypted data
+     * @param keylength  The length of the key
+     * @param slot       The slot
+     * @param keyBytes   The candidate key bytes of the slot
+     * @return The masks, one per candidate; bit i is set if the key byte satisfies alternative i
+     */
+    long[] getPassMasks(byte[] ciphertext, int keylength, int slot, int[] keyBytes) {
+        long[] masks = new long[keyBytes.length];
+        for (int candidate = 0; candidate < keyBytes.length; candidate++) {
+            for (int alternative = 0; alternative < alternatives.size(); alternative++) {
+                if (satisfies(alternatives.get(alternative), ciphertext, keylength, slot, keyBytes[candidate])) {
+                    masks[candidate] |= 1L << alternative;
+                }
+            }
+        }
+        return masks;
+    }
+
+    private static boolean satisfies(List<Constraint> constraints, byte[] ciphertext, int keylength, int slot,
+                                     int keyByte) {
+        for (Constraint constraint : constraints) {
+            if (constraint.position % keylength == slot && constraint.position < ciphertext.length
+                    && !constraint.allowed[(ciphertext[constraint.position] ^ keyByte) & 0xFF]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
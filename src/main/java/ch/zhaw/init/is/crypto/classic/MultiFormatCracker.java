@@ -0,0 +1,460 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import ch.zhaw.init.is.crypto.classic.format.PlaintextValidator;
+import ch.zhaw.init.is.util.CpuQuota;
+import ch.zhaw.init.is.util.LatencyHistogram;
+import ch.zhaw.init.is.util.Metrics;
+import ch.zhaw.init.is.util.ProgressInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * This class implements the cracking of files encrypted with the XOR method
+ * whose plaintext has one of several formats, each recognized by a
+ * {@link PlaintextValidator}.
+ * <p>
+ * First, the magic of every format is used to derive key bytes directly from
+ * the ciphertext. A format whose magic implies contradicting values for the
+ * same key byte is dropped. If the magic determines all but at most
+ * {@value #MAX_COMPLETED_BYTES} key bytes, all completions of the derived key
+ * are validated right away. Otherwise, the key bytes derived from the magic of
+ * a remaining format are fixed, and only its other key bytes are enumerated
+ * best-first from the frequency analysis (as in {@link XorAndCompressCracker}),
+ * assuming the most frequent plaintext byte of the format
+ * ({@link PlaintextValidator#getMostFrequentByte()}). The remaining formats are
+ * searched in a single shared pass under one budget: their generators take turns
+ * batch by batch, so that every format makes progress, and among keys of the
+ * same round the format that comes first in order of preference wins.
+ * The keys are checked for plausibility and then confirmed.
+ */
+public class MultiFormatCracker implements ProgressInfo {
+    /**
+     * Name of the counter of tested candidate keys.
+     */
+    public static final String TRIALS = "trials";
+    /**
+     * Name of the counter of formats rejected by the magic, i.e., whose magic implies
+     * contradicting key bytes or does not fit into the ciphertext.
+     */
+    public static final String MAGIC_REJECTIONS = "magicRejections";
+    /**
+     * Name of the counter of format checks rejected by the plausibility check.
+     */
+    public static final String STRUCTURAL_REJECTIONS = "structuralRejections";
+    /**
+     * Name of the counter of format checks rejected by the confirmation.
+     */
+    public static final String CONFIRM_REJECTIONS = "confirmRejections";
+    /**
+     * Name of the latency histogram of the confirmation.
+     */
+    public static final String CONFIRM_LATENCY = "confirm";
+    private static final int UNKNOWN = -1;
+    private static final int MAX_COMPLETED_BYTES = 2;
+    private static final int BATCH_SIZE = 256;
+
+    private final byte[] ciphertext;
+    private final List<PlaintextValidator> validators;
+    private final Metrics metrics = new Metrics();
+    private final LongAdder numberOfKeysTested = metrics.counter(TRIALS);
+    private final LongAdder magicRejections = metrics.counter(MAGIC_REJECTIONS);
+    private final LongAdder structuralRejections = metrics.counter(STRUCTURAL_REJECTIONS);
+    private final LongAdder confirmRejections = metrics.counter(CONFIRM_REJECTIONS);
+    private final LatencyHistogram confirmLatency = metrics.histogram(CONFIRM_LATENCY);
+    private long totalNumberOfKeysToTest;
+    private volatile boolean budgetExhausted;
+    private volatile boolean cancelled;
+    private int parallelism = CpuQuota.getAvailableProcessors();
+    private Throwable failure;
+
+    /**
+     * The key found and the format it was validated with.
+     */
+    public static class Result {
+        private final PlaintextValidator format;
+        private final int[] key;
+
+        Result(PlaintextValidator format, int[] key) {
+            this.format = format;
+            this.key = key;
+        }
+
+        /**
+         * @return The validator of the format of the plaintext
+         */
+        public PlaintextValidator getFormat() {
+            return format;
+        }
+
+        public int[] getKey() {
+            return key;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param ciphertext The encrypted data; it must not be modified afterwards
+     * @param validators The validators of the possible formats, in order of preference
+     */
+    public MultiFormatCracker(byte[] ciphertext, List<PlaintextValidator> validators) {
+        this.ciphertext = ciphertext;
+        this.validators = new ArrayList<>(validators);
+    }
+
+    /**
+     * Sets the number of threads used to test candidate keys.
+     *
+     * @param parallelism The number of threads
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Determines the key and the format of the plaintext assuming the specified
+     * key length and search depth.
+     *
+     * @param keylength The key length in bytes
+     * @param depth     The search depth (top 'depth' most frequent bytes per key byte)
+     * @param budget    The maximum number of trials and/or time to spend
+     * @return The result or null, if no key was found within the budget
+     * @throws CompletionException if a validator failed, with the cause of the failure
+     */
+    public Result determineKey(int keylength, int depth, SearchBudget budget) {
+        return determineKey(ByteFrequencyTableHelpers.getFrequencyTableForKeyLength(keylength, ciphertext), depth, budget);
+    }
+
+    /**
+     * Same as {@link #determineKey(int, int, SearchBudget)}, but with already computed
+     * byte frequency tables of the ciphertext, one per key byte.
+     *
+     * @param frequencyTable The byte frequency tables (the key length is their number)
+     * @param depth          The search depth (top 'depth' most frequent bytes per key byte)
+     * @param budget         The maximum number of trials and/or time to spend
+     * @return The result or null, if no key was found within the budget
+     * @throws CompletionException if a validator failed, with the cause of the failure
+     */
+    public Result determineKey(ByteFrequencyTable[] frequencyTable, int depth, SearchBudget budget) {
+        metrics.reset();
+        budgetExhausted = false;
+        synchronized (this) {
+            failure = null;
+        }
+        int keylength = frequencyTable.length;
+        long startTime = System.currentTimeMillis();
+
+        List<PlaintextValidator> remaining = new ArrayList<>();
+        List<int[]> derivedKeys = new ArrayList<>();
+        for (PlaintextValidator validator : validators) {
+            int[] derived = deriveKeyFromMagic(validator, keylength);
+            if (derived == null) {
+                magicRejections.increment();
+                continue;
+            }
+            int[] unknown = IntStream.range(0, keylength).filter(i -> derived[i] == UNKNOWN).toArray();
+            if (unknown.length <= MAX_COMPLETED_BYTES) {
+                int[] key = completeDerivedKey(validator, derived, unknown, budget, startTime);
+                if (key != null) {
+                    return new Result(validator, key);
+                }
+                if (cancelled || budgetExhausted) {
+                    return null;
+                }
+            } else {
+                remaining.add(validator);
+                derivedKeys.add(derived);
+            }
+        }
+        if (remaining.isEmpty() || cancelled) {
+            return null;
+        }
+
+        KeyGenerator[] keyGenerators = new KeyGenerator[remaining.size()];
+        totalNumberOfKeysToTest = numberOfKeysTested.sum();
+        for (int i = 0; i < remaining.size(); i++) {
+            keyGenerators[i] = new KeyGenerator(getCandidateKeyBytes(frequencyTable, depth,
+                    remaining.get(i).getMostFrequentByte(), derivedKeys.get(i)), KeyGenerator.Order.BEST_FIRST);
+            long numberOfKeys = keyGenerators[i].getNumberOfKeys();
+            totalNumberOfKeysToTest = numberOfKeys > Long.MAX_VALUE - totalNumberOfKeysToTest
+                    ? Long.MAX_VALUE : totalNumberOfKeysToTest + numberOfKeys;
+        }
+        ForkJoinPool pool = parallelism == 1 ? null : new ForkJoinPool(parallelism);
+        try {
+            Result result = searchFormats(remaining, keyGenerators, budget, startTime, pool);
+            if (result != null || cancelled) {
+                budgetExhausted = false;
+            }
+            return cancelled ? null : result;
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Searches all formats in a single pass: in every round, each format whose
+     * generator is not exhausted contributes its next {@value #BATCH_SIZE} keys, and
+     * the keys of the round are validated together. The first valid key of the
+     * round wins, i.e., the one of the most preferred format.
+     *
+     * @param pool The pool validating the keys of a round or null, to validate them sequentially
+     * @return The result or null, if no key was found within the budget
+     */
+    private Result searchFormats(List<PlaintextValidator> formats, KeyGenerator[] keyGenerators,
+                                 SearchBudget budget, long startTime, ForkJoinPool pool) {
+        boolean[] exhausted = new boolean[formats.size()];
+        long trials = numberOfKeysTested.sum();
+        while (!cancelled && !budgetExhausted) {
+            List<Result> round = new ArrayList<>();
+            for (int i = 0; i < formats.size() && !budgetExhausted; i++) {
+                for (int n = 0; n < BATCH_SIZE && !exhausted[i]; n++) {
+                    int[] key = keyGenerators[i].getNextCandidateKey();
+                    if (key == null) {
+                        exhausted[i] = true;
+                    } else if (isBudgetExhausted(budget, trials, startTime)) {
+                        break;
+                    } else {
+                        round.add(new Result(formats.get(i), key));
+                        trials++;
+                    }
+                }
+            }
+            if (round.isEmpty()) {
+                return null;
+            }
+            Result result = validateRound(round, budget, startTime, pool);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Validates the keys of a round, each with its format.
+     *
+     * @return The first valid key of the round or null
+     * @throws CompletionException if a validator failed, with the cause of the failure
+     */
+    private Result validateRound(List<Result> round, SearchBudget budget, long startTime, ForkJoinPool pool) {
+        Stream<Result> results = round.stream().filter(r -> test(r, budget, startTime));
+        if (pool == null) {
+            try {
+                return results.findFirst().orElse(null);
+            } catch (RuntimeException | Error e) {
+                throw new CompletionException(e);
+            }
+        }
+        try {
+            return pool.submit(() -> results.parallel().findFirst()).get().orElse(null);
+        } catch (InterruptedException e) {
+            cancelled = true;
+            awaitValidators(pool);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            awaitValidators(pool);
+            // The exception of the future is a copy made for this thread
+            throw new CompletionException(getFailure());
+        }
+    }
+
+    /**
+     * Validates a key with its format unless the search has been stopped.
+     */
+    private boolean test(Result candidate, SearchBudget budget, long startTime) {
+        if (cancelled || getFailure() != null) {
+            return false;
+        }
+        if (budget.isTimeExhausted(startTime)) {
+            budgetExhausted = true;
+            return false;
+        }
+        numberOfKeysTested.increment();
+        try {
+            return isValid(candidate.getFormat(), candidate.getKey());
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            throw e;
+        }
+    }
+
+    private synchronized Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Waits for the validations still running, so that no validator is used
+     * after the search has returned.
+     */
+    private static void awaitValidators(ForkJoinPool pool) {
+        pool.shutdown();
+        while (!pool.isTerminated()) {
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                // Interrupted again; the caller restores the interrupt
+            }
+        }
+    }
+
+    /**
+     * Derives the key bytes implied by the magic of the format.
+     *
+     * @return The key with {@value #UNKNOWN} for bytes not covered by the magic,
+     * or null, if the magic implies contradicting values or does not fit into the ciphertext
+     */
+    private int[] deriveKeyFromMagic(PlaintextValidator validator, int keylength) {
+        byte[] magic = validator.getMagic();
+        int offset = validator.getMagicOffset();
+        if (offset + magic.length > ciphertext.length) {
+            return null;
+        }
+        int[] key = new int[keylength];
+        Arrays.fill(key, UNKNOWN);
+        for (int i = 0; i < magic.length; i++) {
+            int slot = (offset + i) % keylength;
+            int value = (ciphertext[offset + i] ^ magic[i]) & 0xFF;
+            if (key[slot] != UNKNOWN && key[slot] != value) {
+                return null;
+            }
+            key[slot] = value;
+        }
+        return key;
+    }
+
+    /**
+     * Validates all keys that agree with the derived key bytes.
+     *
+     * @return The valid key or null, if there is none or the search was stopped
+     * @throws CompletionException if the validator failed, with the cause of the failure
+     */
+    private int[] completeDerivedKey(PlaintextValidator validator, int[] derived, int[] unknown,
+                                     SearchBudget budget, long startTime) {
+        int[] key = derived.clone();
+        for (int completion = 0; completion < 1 << (8 * unknown.length) && !cancelled; completion++) {
+            if (isBudgetExhausted(budget, numberOfKeysTested.sum(), startTime)) {
+                return null;
+            }
+            for (int i = 0; i < unknown.length; i++) {
+                key[unknown[i]] = (completion >> (8 * i)) & 0xFF;
+            }
+            numberOfKeysTested.increment();
+            try {
+                if (isValid(validator, key)) {
+                    return key;
+                }
+            } catch (RuntimeException | Error e) {
+                throw new CompletionException(e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The candidate key bytes per key byte: the derived key byte, if the magic
+     * determines it, otherwise the 'depth' most frequent ciphertext bytes XOR-ed with
+     * the most frequent plaintext byte
+     */
+    private static int[][] getCandidateKeyBytes(ByteFrequencyTable[] frequencyTable, int depth,
+                                                int mostFrequentByte, int[] derived) {
+        int[][] keyBytes = new int[derived.length][];
+        for (int slot = 0; slot < derived.length; slot++) {
+            if (derived[slot] != UNKNOWN) {
+                keyBytes[slot] = new int[]{derived[slot]};
+            } else {
+                keyBytes[slot] = frequencyTable[slot].getMostFrequentBytes(depth);
+                for (int rank = 0; rank < depth; rank++) {
+                    keyBytes[slot][rank] ^= mostFrequentByte;
+                }
+            }
+        }
+        return keyBytes;
+    }
+
+    private boolean isValid(PlaintextValidator validator, int[] key) {
+        if (!validator.isPlausible(ciphertext, key)) {
+            structuralRejections.increment();
+            return false;
+        }
+        long start = System.nanoTime();
+        boolean valid = validator.confirm(ciphertext, key);
+        confirmLatency.recordSince(start);
+        if (!valid) {
+            confirmRejections.increment();
+        }
+        return valid;
+    }
+
+    private boolean isBudgetExhausted(SearchBudget budget, long trials, long startTime) {
+        if (budget.isExhausted(trials, startTime)) {
+            budgetExhausted = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Cancels a running or future search. Cancellation is permanent for this instance.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return true, if the last search stopped because its budget was exhausted
+     */
+    public boolean isBudgetExhausted() {
+        return budgetExhausted;
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.util.ProgressInfo#getProgressAbsolute()
+     */
+    @Override
+    public double getProgressAbsolute() {
+        return numberOfKeysTested.sum();
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.util.ProgressInfo#getProgressInPercent()
+     */
+    @Override
+    public double getProgressInPercent() {
+        return totalNumberOfKeysToTest == 0 ? 0 : numberOfKeysTested.sum() / (double) totalNumberOfKeysToTest * 100;
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.util.ProgressInfo#getUnit()
+     */
+    @Override
+    public String getUnit() {
+        return "trials";
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.util.ProgressInfo#getMetrics()
+     */
+    @Override
+    public Metrics getMetrics() {
+        return metrics;
+    }
+}
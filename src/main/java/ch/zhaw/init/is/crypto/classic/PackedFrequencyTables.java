@@ -0,0 +1,329 @@
+package ch.zhaw.init.is.crypto.classic;
+
+/**
+ * This class implements the byte frequency tables of many slots packed into
+ * a single contiguous array.
+ * <p>
+ * The count of byte value b in slot s is stored at index <tt>s * 256 + b</tt>.
+ * Compared to one {@link ByteFrequencyTable} object per slot, this avoids an
+ * object header and a separate array per slot, and operations over all slots
+ * run over consecutive memory in simple loops the JIT compiler can unroll and
+ * vectorize. {@link #getTable(int)} provides a {@link ByteFrequencyTable} view
+ * of a single slot without copying its counts.
+ * <p>
+ * The static methods work on any array with a table of {@value ByteFrequencyTable#BYTE_VALUES}
+ * counts at the given offset; {@link ByteFrequencyTable} uses them as well.
+ * <p>
+ * Entropies are computed in a single pass as <tt>(ln N - sum(c ln c) / N) / ln 256</tt>
+ * with <tt>c ln c</tt> taken from a precomputed table for counts below
+ * {@value #N_LOG_N_SIZE}. The result differs from the textbook formula
+ * <tt>-sum(p ln p) / ln 256</tt> by at most {@value #ENTROPY_EPSILON} (absolute).
+ * <p>
+ * The counts are <tt>long</tt>, so that a slot can count more than 2^31 bytes
+ * of a stream whose length is not known in advance.
+ */
+public class PackedFrequencyTables {
+    /**
+     * Maximum absolute difference of the entropies computed by this class
+     * from the textbook formula.
+     */
+    public static final double ENTROPY_EPSILON = 1e-12;
+    private static final int SHIFT = 8;
+    private static final int N_LOG_N_SIZE = 1 << 16;
+    private static final double[] N_LOG_N = new double[N_LOG_N_SIZE];
+    private static final double LOG_BYTE_VALUES = Math.log(ByteFrequencyTable.BYTE_VALUES);
+
+    static {
+        for (int n = 1; n < N_LOG_N_SIZE; n++) {
+            N_LOG_N[n] = n * Math.log(n);
+        }
+    }
+
+    private final int slots;
+    private final long[] counts;
+
+    /**
+     * Constructor.
+     *
+     * @param slots The number of slots
+     */
+    public PackedFrequencyTables(int slots) {
+        if (slots < 1) {
+            throw new IllegalArgumentException("Number of slots must be at least 1");
+        }
+        this.slots = slots;
+        this.counts = new long[slots << SHIFT];
+    }
+
+    /**
+     * @return The number of slots
+     */
+    public int getSlots() {
+        return slots;
+    }
+
+    /**
+     * Increments the count of the byte value in the slot by one.
+     *
+     * @param slot  The slot
+     * @param value The byte value
+     */
+    public void addByte(int slot, int value) {
+        counts[(slot << SHIFT) + value]++;
+    }
+
+    /**
+     * Adds the bytes of the buffer to the slots. The slot of a byte is its
+     * position modulo the number of slots.
+     *
+     * @param buffer   The data
+     * @param offset   The offset of the first byte in the buffer
+     * @param length   The number of bytes to add
+     * @param position The position of the first byte in the whole data
+     */
+    public void addBytes(byte[] buffer, int offset, int length, long position) {
+        long[] c = counts;
+        int base = (int) (position % slots) << SHIFT;
+        int end = slots << SHIFT;
+        for (int i = offset; i < offset + length; i++) {
+            c[base + (buffer[i] & 0xFF)]++;
+            base += ByteFrequencyTable.BYTE_VALUES;
+            if (base == end) {
+                base = 0;
+            }
+        }
+    }
+
+    /**
+     * @param slot  The slot
+     * @param value The byte value
+     * @return The count of the byte value in the slot
+     */
+    public long getCount(int slot, int value) {
+        return counts[(slot << SHIFT) + value];
+    }
+
+    /**
+     * @param slot The slot
+     * @return The most frequent byte of the slot
+     */
+    public int getMostFrequentByte(int slot) {
+        return getMostFrequentByte(counts, slot << SHIFT);
+    }
+
+    /**
+     * @return The most frequent byte of every slot
+     */
+    public int[] getMostFrequentBytes() {
+        int[] mostFrequent = new int[slots];
+        for (int slot = 0; slot < slots; slot++) {
+            mostFrequent[slot] = getMostFrequentByte(counts, slot << SHIFT);
+        }
+        return mostFrequent;
+    }
+
+    /**
+     * @param slot   The slot
+     * @param number The number of bytes to be returned
+     * @return The most frequent byte(s) of the slot in descending order
+     */
+    public int[] getMostFrequentBytes(int slot, int number) {
+        return getMostFrequentBytes(counts, slot << SHIFT, number);
+    }
+
+    /**
+     * @param slot The slot
+     * @return The byte-entropy of the slot
+     */
+    public double getByteEntropy(int slot) {
+        return getByteEntropy(counts, slot << SHIFT);
+    }
+
+    /**
+     * @param slot The slot
+     * @return The index of coincidence of the slot
+     */
+    public double getIndexOfCoincidence(int slot) {
+        return getIndexOfCoincidence(counts, slot << SHIFT);
+    }
+
+    /**
+     * Calculates the byte-entropies of all slots in one pass over the counts.
+     *
+     * @return The byte-entropy of every slot
+     */
+    public double[] getByteEntropies() {
+        double[] entropies = new double[slots];
+        for (int slot = 0; slot < slots; slot++) {
+            entropies[slot] = getByteEntropy(counts, slot << SHIFT);
+        }
+        return entropies;
+    }
+
+    /**
+     * Calculates the indexes of coincidence of all slots in one pass over the counts.
+     *
+     * @return The index of coincidence of every slot
+     */
+    public double[] getIndexesOfCoincidence() {
+        double[] indexes = new double[slots];
+        for (int slot = 0; slot < slots; slot++) {
+            indexes[slot] = getIndexOfCoincidence(counts, slot << SHIFT);
+        }
+        return indexes;
+    }
+
+    /**
+     * Adds the counts of the other tables to these tables, slot by slot.
+     *
+     * @param other The tables to add, with the same number of slots
+     * @throws IllegalArgumentException if the numbers of slots differ
+     * @throws ArithmeticException      if a count overflows
+     */
+    public void merge(PackedFrequencyTables other) {
+        if (other.slots != slots) {
+            throw new IllegalArgumentException("Number of slots differs: " + other.slots + " instead of " + slots);
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = Math.addExact(counts[i], other.counts[i]);
+        }
+    }
+
+    /**
+     * Folds the tables onto a smaller number of slots that divides the number of
+     * slots: slot s of the result is the sum of the slots s, s + slots, s + 2 * slots, ...
+     * of this object. The result equals the tables computed from the data with
+     * the smaller number of slots, without reading the data again.
+     *
+     * @param slots The number of slots of the result
+     * @return The folded tables
+     * @throws IllegalArgumentException if slots does not divide the number of slots
+     * @throws ArithmeticException      if a count overflows
+     */
+    public PackedFrequencyTables fold(int slots) {
+        if (slots < 1 || this.slots % slots != 0) {
+            throw new IllegalArgumentException(slots + " does not divide the number of slots " + this.slots);
+        }
+        PackedFrequencyTables folded = new PackedFrequencyTables(slots);
+        int size = slots << SHIFT;
+        for (int i = 0; i < counts.length; i++) {
+            folded.counts[i % size] = Math.addExact(folded.counts[i % size], counts[i]);
+        }
+        return folded;
+    }
+
+    /**
+     * Returns a view of a single slot. The view shares the counts with this
+     * object: changes of one are visible in the other.
+     *
+     * @param slot The slot
+     * @return The table of the slot
+     */
+    public ByteFrequencyTable getTable(int slot) {
+        if (slot < 0 || slot >= slots) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " not in 0.." + (slots - 1));
+        }
+        return new ByteFrequencyTable(counts, slot << SHIFT);
+    }
+
+    /**
+     * @return Views of all slots (see {@link #getTable(int)})
+     */
+    public ByteFrequencyTable[] getTables() {
+        ByteFrequencyTable[] tables = new ByteFrequencyTable[slots];
+        for (int slot = 0; slot < slots; slot++) {
+            tables[slot] = getTable(slot);
+        }
+        return tables;
+    }
+
+    /**
+     * Finds the most frequent byte of a table. On ties, the lowest byte value wins.
+     *
+     * @param counts The counts
+     * @param offset The offset of the table in counts
+     * @return The most frequent byte
+     */
+    static int getMostFrequentByte(long[] counts, int offset) {
+        int best = 0;
+        long bestCount = counts[offset];
+        for (int value = 1; value < ByteFrequencyTable.BYTE_VALUES; value++) {
+            if (counts[offset + value] > bestCount) {
+                bestCount = counts[offset + value];
+                best = value;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Finds the most frequent bytes of a table in descending order of their
+     * counts. On ties, lower byte values come first.
+     *
+     * @param counts The counts
+     * @param offset The offset of the table in counts
+     * @param number The number of bytes to be returned
+     * @return The most frequent bytes
+     */
+    static int[] getMostFrequentBytes(long[] counts, int offset, int number) {
+        int[] top = new int[number];
+        int size = 0;
+        for (int value = 0; value < ByteFrequencyTable.BYTE_VALUES; value++) {
+            long count = counts[offset + value];
+            if (size == number && count <= counts[offset + top[size - 1]]) {
+                continue;
+            }
+            int position = size < number ? size++ : size - 1;
+            while (position > 0 && counts[offset + top[position - 1]] < count) {
+                top[position] = top[position - 1];
+                position--;
+            }
+            top[position] = value;
+        }
+        return top;
+    }
+
+    /**
+     * Calculates the byte-entropy of a table (see the class comment for the precision).
+     *
+     * @param counts The counts
+     * @param offset The offset of the table in counts
+     * @return The byte-entropy (0, if the table is empty)
+     */
+    static double getByteEntropy(long[] counts, int offset) {
+        long total = 0;
+        double sumNLogN = 0;
+        for (int value = 0; value < ByteFrequencyTable.BYTE_VALUES; value++) {
+            long count = counts[offset + value];
+            total += count;
+            sumNLogN += count < N_LOG_N_SIZE ? N_LOG_N[(int) count] : count * Math.log(count);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        double entropy = (Math.log(total) - sumNLogN / total) / LOG_BYTE_VALUES;
+        return Math.max(0, entropy);
+    }
+
+    /**
+     * Calculates the index of coincidence of a table, i.e., the probability
+     * that two bytes drawn without replacement have the same value.
+     *
+     * @param counts The counts
+     * @param offset The offset of the table in counts
+     * @return The index of coincidence (0, if the table has less than two bytes)
+     */
+    static double getIndexOfCoincidence(long[] counts, int offset) {
+        long total = 0;
+        double coincidences = 0;
+        for (int value = 0; value < ByteFrequencyTable.BYTE_VALUES; value++) {
+            long count = counts[offset + value];
+            total += count;
+            coincidences += (double) count * (count - 1);
+        }
+        if (total < 2) {
+            return 0;
+        }
+        return coincidences / ((double) total * (total - 1));
+    }
+}
@@ -0,0 +1,124 @@
+package ch.zhaw.init.is.crypto.classic;
+
+/**
+ * This class implements a budget limiting a key search.
+ * <p>
+ * A budget bounds the number of candidate keys tested (trials) and/or the
+ * wall-clock time spent on a search. When the budget is exhausted, the
+ * search stops and reports the coverage of the search space it reached.
+ */
+public class SearchBudget {
+    /**
+     * Budget without any limit.
+     */
+    public static final SearchBudget UNLIMITED = new SearchBudget(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private final long maxTrials;
+    private final long maxMillis;
+
+    private SearchBudget(long maxTrials, long maxMillis) {
+        if (maxTrials < 1 || maxMillis < 1) {
+            throw new IllegalArgumentException("Budget must be positive");
+        }
+        this.maxTrials = maxTrials;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * Creates a budget limiting the number of trials.
+     *
+     * @param maxTrials The maximum number of candidate keys to test
+     * @return The budget
+     */
+    public static SearchBudget ofTrials(long maxTrials) {
+        return new SearchBudget(maxTrials, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a budget limiting the search time.
+     *
+     * @param maxMillis The maximum search time in ms
+     * @return The budget
+     */
+    public static SearchBudget ofMillis(long maxMillis) {
+        return new SearchBudget(Long.MAX_VALUE, maxMillis);
+    }
+
+    /**
+     * Parses a budget from its textual form. A plain number is a trial
+     * budget, a number followed by 's', 'm' or 'h' is a time budget
+     * (e.g., <tt>1000000</tt>, <tt>30s</tt>, <tt>5m</tt>).
+     *
+     * @param budget The textual budget
+     * @return The budget
+     * @throws NumberFormatException if the budget cannot be parsed
+     */
+    public static SearchBudget parse(String budget) {
+        char unit = budget.isEmpty() ? ' ' : budget.charAt(budget.length() - 1);
+        String number = budget.substring(0, Math.max(0, budget.length() - 1));
+        try {
+            switch (unit) {
+                case 's':
+                    return ofMillis(Long.parseLong(number) * 1000);
+                case 'm':
+                    return ofMillis(Long.parseLong(number) * 60 * 1000);
+                case 'h':
+                    return ofMillis(Long.parseLong(number) * 60 * 60 * 1000);
+                default:
+                    return ofTrials(Long.parseLong(budget));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new NumberFormatException("Invalid budget: " + budget);
+        }
+    }
+
+    /**
+     * @return The maximum number of trials
+     */
+    public long getMaxTrials() {
+        return maxTrials;
+    }
+
+    /**
+     * @return The maximum search time in ms
+     */
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    /**
+     * @return true, if this budget limits the search in any way
+     */
+    public boolean isLimited() {
+        return maxTrials != Long.MAX_VALUE || maxMillis != Long.MAX_VALUE;
+    }
+
+    /**
+     * Checks whether the budget is used up.
+     *
+     * @param trials          The number of trials done so far
+     * @param startTimeMillis The start time of the search
+     * @return true, if no further trials should be done
+     */
+    public boolean isExhausted(long trials, long startTimeMillis) {
+        return trials >= maxTrials || isTimeExhausted(startTimeMillis);
+    }
+
+    /**
+     * Checks whether the time budget is used up.
+     *
+     * @param startTimeMillis The start time of the search
+     * @return true, if no further trials should be done
+     */
+    public boolean isTimeExhausted(long startTimeMillis) {
+        return maxMillis != Long.MAX_VALUE && System.currentTimeMillis() - startTimeMillis >= maxMillis;
+    }
+
+    @Override
+    public String toString() {
+        if (!isLimited()) {
+            return "unlimited";
+        }
+        return maxTrials != Long.MAX_VALUE ? maxTrials + " trials" : maxMillis + " ms";
+    }
+}
@@ -0,0 +1,100 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * This class implements slotted {@link ByteFrequencyTable}s that are updated
+ * incrementally from a stream of unknown length, e.g., from a pipe.
+ * <p>
+ * The stream is read in large blocks and only the tables are kept, so the
+ * memory used does not depend on the length of the stream. The slot of a byte
+ * is its position in the stream modulo the number of slots, as in
+ * {@link ByteFrequencyTableHelpers#getFrequencyTableForKeyLength(int, byte[])}.
+ */
+public class StreamingHistogram {
+    /**
+     * Default size of the blocks read from the stream.
+     */
+    public static final int BLOCK_SIZE = 1 << 20;
+
+    private final PackedFrequencyTables frequencyTable;
+    private long bytesProcessed;
+
+    /**
+     * Constructor.
+     *
+     * @param slots The number of slots (e.g., the key length)
+     */
+    public StreamingHistogram(int slots) {
+        if (slots < 1) {
+            throw new IllegalArgumentException("Number of slots must be at least 1");
+        }
+        frequencyTable = new PackedFrequencyTables(slots);
+    }
+
+    /**
+     * Adds the bytes to the tables, continuing at the slot following the last added byte.
+     *
+     * @param buffer The data
+     * @param offset The offset of the first byte in the buffer
+     * @param length The number of bytes to add
+     */
+    public void update(byte[] buffer, int offset, int length) {
+        frequencyTable.addBytes(buffer, offset, length, bytesProcessed);
+        bytesProcessed += length;
+    }
+
+    /**
+     * Reads the stream to its end and adds all bytes to the tables. While reading,
+     * the listener is called at most every intervalMillis ms with interim results.
+     * The stream is not closed.
+     *
+     * @param inputStream    The stream
+     * @param intervalMillis The minimum time between two calls of the listener in ms
+     * @param listener       Receives this histogram; may be null
+     * @throws IOException if reading fails
+     */
+    public void process(InputStream inputStream, long intervalMillis, Consumer<StreamingHistogram> listener)
+            throws IOException {
+        byte[] buffer = new byte[BLOCK_SIZE];
+        long lastReport = System.currentTimeMillis();
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            update(buffer, 0, read);
+            if (listener != null && System.currentTimeMillis() - lastReport >= intervalMillis) {
+                listener.accept(this);
+                lastReport = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * @return The tables, one per slot. They are live and change with further updates.
+     */
+    public ByteFrequencyTable[] getFrequencyTables() {
+        return frequencyTable.getTables();
+    }
+
+    /**
+     * @return The packed tables; they are live and change with further updates
+     */
+    PackedFrequencyTables getPackedFrequencyTables() {
+        return frequencyTable;
+    }
+
+    /**
+     * @return The number of bytes added so far
+     */
+    public long getBytesProcessed() {
+        return bytesProcessed;
+    }
+
+    /**
+     * @return The most frequent byte of each slot
+     */
+    public int[] getMostFrequentBytes() {
+        return frequencyTable.getMostFrequentBytes();
+    }
+}
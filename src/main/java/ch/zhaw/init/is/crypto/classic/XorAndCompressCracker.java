@@ -1,33 +1,60 @@
 package ch.zhaw.init.is.crypto.classic;
 
+import ch.zhaw.init.is.util.CpuQuota;
+import ch.zhaw.init.is.util.Metrics;
 import ch.zhaw.init.is.util.ProgressInfo;
 
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.util.Optional;
-import java.util.Spliterators;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.function.Consumer;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
-
-import static java.util.Spliterator.DISTINCT;
-import static java.util.Spliterator.NONNULL;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
 
 public class XorAndCompressCracker implements ProgressInfo {
+    /**
+     * Name of the counter of tested candidate keys.
+     */
+    public static final String TRIALS = "trials";
+    /**
+     * Name of the counter of subtrees skipped by the depth-first search.
+     */
+    public static final String PRUNED_SUBTREES = "prunedSubtrees";
+    /**
+     * Name of the counter of candidate keys skipped by a sweep over several key
+     * lengths because they have been tested at a shorter key length.
+     */
+    public static final String SAVED_TRIALS = "savedTrials";
+    /**
+     * Name of the gauge with the number of threads testing keys, as chosen by the tuning.
+     */
+    public static final String WORKERS = "workers";
+    /**
+     * Name of the gauge with the number of keys a thread takes at once, as chosen by the tuning.
+     */
+    public static final String BATCH_SIZE = "batchSize";
+    /**
+     * Name of the gauge with the mean time to test a key in ns, as measured by the tuning.
+     */
+    public static final String TRIAL_NANOS = "trialNanos";
     private EncryptedZipFile encryptedZipFile;
-    private ThreadLocal<EncryptedZipFile> localEncryptedZipFile;
-    private AtomicLong numberOfKeysTested = new AtomicLong();
+    private Metrics metrics = new Metrics();
+    private LongAdder numberOfKeysTested = metrics.counter(TRIALS);
+    private LongAdder savedTrials = metrics.counter(SAVED_TRIALS);
     private long totalNumberOfKeysToTest;
+    private volatile boolean budgetExhausted;
+    private volatile boolean cancelled;
+    private int parallelism = CpuQuota.getAvailableProcessors();
+    private boolean depthFirst;
 
 
     public XorAndCompressCracker(String filename) throws IOException {
-        encryptedZipFile = EncryptedZipFile.create(filename);
-        localEncryptedZipFile = ThreadLocal.withInitial(encryptedZipFile::clone);
+        this(EncryptedZipFile.create(filename));
+    }
+
+    public XorAndCompressCracker(EncryptedZipFile encryptedZipFile) {
+        this.encryptedZipFile = encryptedZipFile;
+        encryptedZipFile.setMetrics(metrics);
     }
 
 
@@ -40,32 +67,314 @@ public class XorAndCompressCracker implements ProgressInfo {
      * @throws IOException
      */
     public int[] determineKey(int keylength, int depth) throws IOException {
-        totalNumberOfKeysToTest = getNumberOfCandidateKeys(keylength, depth);
-        numberOfKeysTested.set(0);
-        ByteFrequencyTable[] frequencyTable = getFrequencyTableForKeyLength(keylength);
+        return determineKey(keylength, depth, SearchBudget.UNLIMITED);
+    }
+
+    /**
+     * Determines the key of an encrypted ZIP file assuming the specified key length and search depth.
+     * The candidate keys are tested best-first, i.e., keys built from the most frequent ciphertext
+     * bytes are tested before keys built from less frequent ones. Candidate key bytes that cannot
+     * produce the local file header of a ZIP file ({@link KnownPlaintext#zipLocalHeader()}) are
+     * removed beforehand. The search stops when the budget
+     * is exhausted; {@link #isBudgetExhausted()} and {@link #getProgressInPercent()} then tell
+     * which part of the search space has been covered.
+     *
+     * @param keylength The key length in bytes
+     * @param depth     The search depth (top 'depth' most frequent bytes per key byte)
+     * @param budget    The maximum number of trials and/or time to spend
+     * @return The key or null, if none was found within the budget
+     * @throws IOException
+     */
+    public int[] determineKey(int keylength, int depth, SearchBudget budget) throws IOException {
+        return determineKey(getFrequencyTableForKeyLength(keylength), depth, budget);
+    }
+
+    /**
+     * Same as {@link #determineKey(int, int, SearchBudget)}, but with already computed
+     * byte frequency tables of the ciphertext, one per key byte.
+     *
+     * @param frequencyTable The byte frequency tables (the key length is their number)
+     * @param depth          The search depth (top 'depth' most frequent bytes per key byte)
+     * @param budget         The maximum number of trials and/or time to spend
+     * @return The key or null, if none was found within the budget
+     */
+    public int[] determineKey(ByteFrequencyTable[] frequencyTable, int depth, SearchBudget budget) {
+        metrics.reset();
+        budgetExhausted = false;
+        KeyGenerator keyGenerator = newKeyGenerator(frequencyTable, depth);
+        totalNumberOfKeysToTest = keyGenerator.getNumberOfKeys();
+        return searchKey(keyGenerator, budget, System.currentTimeMillis(), 0, null);
+    }
+
+    /**
+     * Determines the key of an encrypted ZIP file trying all key lengths from
+     * minKeylength to maxKeylength (in ascending order) in a single search.
+     * <p>
+     * A key of length L that repeats with a period d (a divisor of L) encrypts
+     * the file exactly like its first d bytes. If the search at key length d has
+     * been completed and the first d bytes are among its candidates, the key has
+     * already been rejected at length d and is skipped. The skipped keys are
+     * counted in the metric {@value #SAVED_TRIALS}. The byte frequency tables are
+     * shared as well: the tables of a key length whose double is within the range
+     * are folded from the tables of the double (see {@link PackedFrequencyTables#fold(int)}),
+     * so the file is only read for the key lengths above half of the largest one.
+     * The double is the smallest multiple, so a key length without it in the range
+     * has no multiple in the range at all.
+     * <p>
+     * The budget applies to the search over all key lengths.
+     *
+     * @param minKeylength The smallest key length in bytes
+     * @param maxKeylength The largest key length in bytes
+     * @param depth        The search depth (top 'depth' most frequent bytes per key byte)
+     * @param budget       The maximum number of trials and/or time to spend
+     * @return The key or null, if none was found within the budget
+     */
+    public int[] determineKey(int minKeylength, int maxKeylength, int depth, SearchBudget budget) {
+        if (minKeylength < 1 || maxKeylength < minKeylength) {
+            throw new IllegalArgumentException("Invalid range of key lengths: " + minKeylength + "-" + maxKeylength);
+        }
+        metrics.reset();
+        budgetExhausted = false;
+        PackedFrequencyTables[] tables = getFrequencyTablesForKeyLengths(minKeylength, maxKeylength);
+        KeyGenerator[] keyGenerators = new KeyGenerator[maxKeylength + 1];
+        totalNumberOfKeysToTest = 0;
+        for (int keylength = minKeylength; keylength <= maxKeylength; keylength++) {
+            keyGenerators[keylength] = newKeyGenerator(tables[keylength].getTables(), depth);
+            long numberOfKeys = keyGenerators[keylength].getNumberOfKeys();
+            totalNumberOfKeysToTest = numberOfKeys > Long.MAX_VALUE - totalNumberOfKeysToTest
+                    ? Long.MAX_VALUE : totalNumberOfKeysToTest + numberOfKeys;
+        }
+        long startTime = System.currentTimeMillis();
+
+        boolean[][][] coveredKeyBytes = new boolean[maxKeylength + 1][][];
+        for (int keylength = minKeylength; keylength <= maxKeylength && !cancelled; keylength++) {
+            int[] key = searchKey(keyGenerators[keylength], budget, startTime,
+                    numberOfKeysTested.sum() + savedTrials.sum(), k -> isCovered(k, coveredKeyBytes));
+            if (key != null || cancelled || budgetExhausted) {
+                return cancelled ? null : key;
+            }
+            int[][] keyBytes = keyGenerators[keylength].getKeyBytes();
+            coveredKeyBytes[keylength] = new boolean[keylength][ByteFrequencyTable.BYTE_VALUES];
+            for (int slot = 0; slot < keylength; slot++) {
+                for (int keyByte : keyBytes[slot]) {
+                    coveredKeyBytes[keylength][slot][keyByte] = true;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The frequency tables of all key lengths of the range; the tables of a
+     * key length with a multiple in the range are folded from the tables of its
+     * smallest multiple, the double, which is the cheapest to fold and computed before
+     */
+    private PackedFrequencyTables[] getFrequencyTablesForKeyLengths(int minKeylength, int maxKeylength) {
+        byte[] ciphertext = encryptedZipFile.getEncryptedBytes();
+        PackedFrequencyTables[] tables = new PackedFrequencyTables[maxKeylength + 1];
+        for (int keylength = maxKeylength; keylength >= minKeylength; keylength--) {
+            int multiple = 2 * keylength;
+            if (multiple <= maxKeylength) {
+                tables[keylength] = tables[multiple].fold(keylength);
+            } else {
+                tables[keylength] = new PackedFrequencyTables(keylength);
+                tables[keylength].addBytes(ciphertext, 0, ciphertext.length, 0);
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * @return true, if the key repeats with the length of a completed search and its
+     * first bytes were among the candidates of that search
+     */
+    private static boolean isCovered(int[] key, boolean[][][] coveredKeyBytes) {
+        for (int period = 1; period < key.length; period++) {
+            if (key.length % period == 0 && coveredKeyBytes[period] != null
+                    && isPeriodic(key, period) && isAmongCandidates(key, coveredKeyBytes[period])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isPeriodic(int[] key, int period) {
+        for (int i = period; i < key.length; i++) {
+            if (key[i] != key[i - period]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAmongCandidates(int[] key, boolean[][] candidates) {
+        for (int slot = 0; slot < candidates.length; slot++) {
+            if (!candidates[slot][key[slot]]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private KeyGenerator newKeyGenerator(ByteFrequencyTable[] frequencyTable, int depth) {
+        return new KeyGenerator(frequencyTable, depth, 0,
+                depthFirst ? KeyGenerator.Order.ODOMETER : KeyGenerator.Order.BEST_FIRST,
+                KnownPlaintext.zipLocalHeader(), encryptedZipFile.getEncryptedBytes());
+    }
+
+    /**
+     * Tests the candidate keys of the generator, best-first or depth-first. The
+     * best-first search tunes its batch size and number of threads to the cost of
+     * a trial (see {@link AdaptiveKeySearch}). Every thread tests with its own clone
+     * of the file; the clones are closed when the search has finished.
+     *
+     * @param keyGenerator The generator of the candidate keys
+     * @param budget       The budget of the whole search
+     * @param startTime    The start time of the whole search
+     * @param trialsBefore The number of keys generated by earlier parts of the whole search
+     * @param covered      Keys that are skipped because they have been tested before, or null
+     * @return The key or null, if none was found within the budget
+     */
+    private int[] searchKey(KeyGenerator keyGenerator, SearchBudget budget, long startTime, long trialsBefore,
+                            Predicate<int[]> covered) {
+        Queue<EncryptedZipFile> clones = new ConcurrentLinkedQueue<>();
+        ThreadLocal<EncryptedZipFile> localEncryptedZipFile = ThreadLocal.withInitial(() -> {
+            EncryptedZipFile clone = encryptedZipFile.clone();
+            clones.add(clone);
+            return clone;
+        });
+        Predicate<int[]> tryKey = k -> {
+            if (covered != null && covered.test(k)) {
+                savedTrials.increment();
+                return false;
+            }
+            numberOfKeysTested.increment();
+            return localEncryptedZipFile.get().tryDecryption(k);
+        };
+        try {
+            if (depthFirst) {
+                return searchKeyDepthFirst(keyGenerator, budget, startTime, trialsBefore, tryKey);
+            }
+            return searchKeyBestFirst(keyGenerator, budget, startTime, trialsBefore, tryKey);
+        } finally {
+            // The threads of the search have finished
+            clones.forEach(EncryptedZipFile::close);
+        }
+    }
 
-        ExecutorService pool = Executors.newWorkStealingPool();
+    /**
+     * Best-first variant of {@link #searchKey}.
+     */
+    private int[] searchKeyBestFirst(KeyGenerator keyGenerator, SearchBudget budget, long startTime,
+                                     long trialsBefore, Predicate<int[]> tryKey) {
+        int[] key = new AdaptiveKeySearch(keyGenerator, parallelism, metrics).search(k -> {
+            if (cancelled) {
+                return false;
+            }
+            if (budget.isTimeExhausted(startTime)) {
+                budgetExhausted = true;
+                return false;
+            }
+            return tryKey.test(k);
+        }, generated -> cancelled || isBudgetExhausted(budget, trialsBefore + generated, startTime));
 
-        KeyGenerator keyGenerator = new KeyGenerator(frequencyTable, depth, 0);
-        Optional<int[]> maybeKey = keyGenerator.getKeyStream()
-                .map(k -> CompletableFuture.supplyAsync(() -> {
-                    numberOfKeysTested.incrementAndGet();
-                    if (localEncryptedZipFile.get().tryDecryption(k)) return k;
-                    return null;
-                }, pool))
-                .map(f -> {
-                    try {
-                        return f.get();
-                    } catch (InterruptedException | ExecutionException e) {
-                    }
+        if (key != null || cancelled) {
+            budgetExhausted = false;
+        }
+        return cancelled ? null : key;
+    }
 
-                    return null;
-                })
-                .filter(o -> o != null)
-                .findFirst();
+    /**
+     * Depth-first variant of {@link #searchKey}: the candidate keys are visited in
+     * odometer order, and subtrees whose key bytes violate the rules of the ZIP
+     * local file header are skipped (see {@link DepthFirstKeySearch}). The progress
+     * refers to all candidate keys, so it may stay below 100% when subtrees have
+     * been skipped.
+     */
+    private int[] searchKeyDepthFirst(KeyGenerator keyGenerator, SearchBudget budget, long startTime,
+                                      long trialsBefore, Predicate<int[]> tryKey) {
+        byte[] ciphertext = encryptedZipFile.getEncryptedBytes();
+        DepthFirstKeySearch search = new DepthFirstKeySearch(ciphertext, keyGenerator.getKeyBytes(),
+                DepthFirstKeySearch.zipLocalHeaderRules(ciphertext.length))
+                .withPrunedSubtreesCounter(metrics.counter(PRUNED_SUBTREES));
+        int[] key = search.search(tryKey,
+                () -> cancelled || isBudgetExhausted(budget, trialsBefore + search.getTrials(), startTime),
+                parallelism);
+
+        if (key != null || cancelled) {
+            budgetExhausted = false;
+        }
+        return cancelled ? null : key;
+    }
 
+    /**
+     * Cancels a running or future call of {@link #determineKey(int, int, SearchBudget)}.
+     * The search stops testing candidate keys as soon as possible and returns null.
+     * Cancellation is permanent for this instance.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
 
-        return maybeKey.orElse(null);
+    /**
+     * @return true, if the search has been cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Sets the maximum number of threads used to test candidate keys; the
+     * best-first search uses fewer while more would only wait for the
+     * generation of keys. Default is the number of available processors,
+     * limited by the CPU quota of a container ({@link CpuQuota}). With 1,
+     * the keys are tested in the calling thread.
+     *
+     * @param parallelism The number of threads
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Enables the walk over all entries of the ZIP file for every key that
+     * passed the cheaper checks (see {@link EncryptedZipFile#setFullWalk}).
+     * Must be called before the search is started.
+     *
+     * @param fullWalk true, if all entries should be read
+     */
+    public void setFullWalk(boolean fullWalk) {
+        encryptedZipFile.setFullWalk(fullWalk);
+    }
+
+    /**
+     * Switches to the depth-first search with pruning of subtrees, which visits
+     * the candidate keys in odometer order instead of best-first order.
+     * Must be called before the search is started.
+     *
+     * @param depthFirst true, if the depth-first search should be used
+     */
+    public void setDepthFirst(boolean depthFirst) {
+        this.depthFirst = depthFirst;
+    }
+
+    private boolean isBudgetExhausted(SearchBudget budget, long trials, long startTime) {
+        if (budget.isExhausted(trials, startTime)) {
+            budgetExhausted = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true, if the last call of {@link #determineKey(int, int, SearchBudget)}
+     * stopped because its budget was exhausted before the search space was covered
+     */
+    public boolean isBudgetExhausted() {
+        return budgetExhausted;
     }
 
     private ByteFrequencyTable[] getFrequencyTableForKeyLength(int keylength) throws IOException {
@@ -76,14 +385,16 @@ public class XorAndCompressCracker implements ProgressInfo {
 
     /**
      * Returns the number of candidate keys for a given key length
-     * and search depth. Uses the top 'depth' most frequent bytes
+     * and search depth. Uses the top 'depth' most frequent bytes.
+     * This is the number of keys the search enumerates at most; candidates
+     * contradicting the ZIP local file header are removed from it.
      *
      * @param keylength The length of the key in bytes
      * @param depth     The search depth (top 'depth' most frequent bytes)
-     * @return The number of candidate keys
+     * @return The number of candidate keys (saturated at Long.MAX_VALUE)
      */
-    public long getNumberOfCandidateKeys(int keylength, int depth) {
-        return (long) (256 * Math.pow(depth, keylength));
+    public static long getNumberOfCandidateKeys(int keylength, int depth) {
+        return (long) Math.pow(depth, keylength);
     }
 
 
@@ -92,7 +403,7 @@ public class XorAndCompressCracker implements ProgressInfo {
      */
     @Override
     public double getProgressAbsolute() {
-        return this.numberOfKeysTested.get();
+        return this.numberOfKeysTested.sum();
     }
 
 
@@ -101,7 +412,7 @@ public class XorAndCompressCracker implements ProgressInfo {
      */
     @Override
     public double getProgressInPercent() {
-        return numberOfKeysTested.get() / (double) totalNumberOfKeysToTest * 100;
+        return (numberOfKeysTested.sum() + savedTrials.sum()) / (double) totalNumberOfKeysToTest * 100;
     }
 
 
@@ -112,120 +423,13 @@ public class XorAndCompressCracker implements ProgressInfo {
     public String getUnit() {
         return "trials";
     }
-}
-
-
-/**
- * Helper class to generate different candidate keys. It is based on the
- * assumption that when generating the byte frequency distributions per key
- * byte from the ciphertext, then the most frequent byte in the compressed
- * plaintext should correspond to one of the most frequent bytes in all of the
- * byte frequency distributions generated from the ciphertext.
- *
- * @author tebe
- */
-class KeyGenerator {
-    private int[][] candidates;
-    private int[] currentCandidateCombination;
-    private int numberOfCandidatesPerKeyByte;
-    private boolean allCandidatesTested;
-    private int mostFrequentByteInPlaintext;
-
-    /**
-     * Constructor. It generates a 2D array with size keylength *
-     * numberOfCandidatesPerKeyByte and stores it in the variable candidates.
-     * For each of the key bytes, the array contains the numberOfCandidatesPerKeyByte
-     * most frequent ciphertext bytes. This 2D array is then used as the basis to
-     * determine different candidate keys by using the other methods in this class.
-     * <p>
-     * The next combination of the ciphertext bytes to be tested is determined by
-     * the value of the array currentCandidateCombination (see method
-     * getNextCandidatedKey below). The constructor creates this array and sets it
-     * to [0 0 0 0 0 0] (assuming a keylength of 6).
-     *
-     * @param frequencyTable               The frequency table (per key byte) of the ciphertext
-     * @param numberOfCandidatesPerKeyByte The number of candidates to consider per key byte
-     *                                     (e.g. if equal to 4, then the 4 most frequent ciphertext
-     *                                     bytes are considered per key byte)
-     * @param mostFrequentByte             The assumed most frequent byte in the plaintext
-     */
-    public KeyGenerator(ByteFrequencyTable[] frequencyTable,
-                        int numberOfCandidatesPerKeyByte, int mostFrequentByte) {
-        this.numberOfCandidatesPerKeyByte = numberOfCandidatesPerKeyByte;
-        this.mostFrequentByteInPlaintext = mostFrequentByte;
-        candidates = new int[frequencyTable.length][];
-        currentCandidateCombination = new int[frequencyTable.length];
-
-        // Creates the 2D array which contains the numberOfCandidatesPerKeyByte
-        // most frequent ciphertext bytes per key byte.
-        for (int keyIndex = 0; keyIndex < frequencyTable.length; keyIndex++) {
-            candidates[keyIndex] = frequencyTable[keyIndex]
-                    .getMostFrequentBytes(numberOfCandidatesPerKeyByte);
-        }
-    }
-
-    /**
-     * Returns the next candidate key. To do this, the current value of
-     * currentCandidateCombination is taken to determine the next combination of
-     * ciphertext bytes to be tested. For instance (assuming a keylength of 6),
-     * if currentCandidateCombination corresponds to [0 3 1 3 0 2], this means that
-     * for the first ciphertext byte, the most frequent byte is taken, for the second
-     * ciphertext byte, the 4th-most frequent byte is chosen, for the third ciphertext
-     * byte, the 2nd-most frequent byte is chosen and so on.
-     * <p>
-     * The corresponding candidate key is then determined by XOR-ing these ciphertext
-     * bytes with the assumed most frequent value in the plaintext.
-     *
-     * @return The candidate key or null if all candidate keys have been returned
-     */
-    public int[] getNextCandidateKey() {
-        if (allCandidatesTested) {
-            return null;
-        }
-        int[] key = new int[candidates.length];
-        for (int keyByte = 0; keyByte < key.length; keyByte++) {
-            key[keyByte] = candidates[keyByte][currentCandidateCombination[keyByte]]
-                    ^ mostFrequentByteInPlaintext;
-        }
-        updateCandidateCombination();
-        return key;
-    }
-
-    public Stream<int[]> getKeyStream() {
-        return StreamSupport.stream(new Spliterators.AbstractSpliterator<int[]>(Long.MAX_VALUE, DISTINCT | NONNULL) {
-            @Override public boolean tryAdvance(Consumer<? super int[]> action) {
-                int[] key = getNextCandidateKey();
 
-                if (key == null) return false;
-                else action.accept(key);
-
-                return true;
-            }
-        }, true);
-    }
 
-
-    /**
-     * Switches to the next combination of ciphertext bytes to be tested by updating
-     * currentCandidateCombination. With each call of the method, the next combination
-     * is determined based on the current combination. For instance (assuming a keylength
-     * of 6 and numberOfCandidatesPerKeyByte = 4), the sequence is [0 0 0 0 0 0],
-     * [0 0 0 0 0 1], [0 0 0 0 0 2], [0 0 0 0 0 3], [0 0 0 0 1 0], [0 0 0 0 1 1] and so on.
-     * Overall, all possible combinations from [0 0 0 0 0 0] to [3 3 3 3 3 3] will be used
-     * exactly once, which guarantees that all combinations will be tested.
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.util.ProgressInfo#getMetrics()
      */
-    private void updateCandidateCombination() {
-        int index = currentCandidateCombination.length - 1;
-        while (index >= 0
-                && currentCandidateCombination[index] == numberOfCandidatesPerKeyByte - 1) {
-            currentCandidateCombination[index] = 0;
-            index--;
-        }
-        if (index < 0) {
-            allCandidatesTested = true;
-        } else {
-            currentCandidateCombination[index]++;
-        }
+    @Override
+    public Metrics getMetrics() {
+        return metrics;
     }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,87 @@
+package ch.zhaw.init.is.crypto.classic.format;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Validator of ELF executables and libraries. The plausibility check covers
+ * the identification bytes, the confirmation checks that the header sizes
+ * match the class and that the program and section header tables lie within
+ * the file.
+ */
+public class ElfValidator implements PlaintextValidator {
+    private static final byte[] MAGIC = {0x7F, 0x45, 0x4C, 0x46};
+    private static final int CLASS_32 = 1;
+    private static final int CLASS_64 = 2;
+    private static final int IDENT_SIZE = 16;
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#getName()
+     */
+    @Override
+    public String getName() {
+        return "elf";
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#getMagic()
+     */
+    @Override
+    public byte[] getMagic() {
+        return MAGIC.clone();
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#isPlausible(byte[], int[])
+     */
+    @Override
+    public boolean isPlausible(byte[] ciphertext, int[] key) {
+        byte[] ident = PlaintextValidator.decrypt(ciphertext, key, 0, IDENT_SIZE);
+        if (ident.length < IDENT_SIZE || (ident[4] != CLASS_32 && ident[4] != CLASS_64)
+                || (ident[5] != 1 && ident[5] != 2) || ident[6] != 1) {
+            return false;
+        }
+        for (int i = 9; i < IDENT_SIZE; i++) {
+            if (ident[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#confirm(byte[], int[])
+     */
+    @Override
+    public boolean confirm(byte[] ciphertext, int[] key) {
+        boolean is64 = ((ciphertext[4] ^ key[4 % key.length]) & 0xFF) == CLASS_64;
+        int headerSize = is64 ? 64 : 52;
+        byte[] header = PlaintextValidator.decrypt(ciphertext, key, 0, headerSize);
+        if (header.length < headerSize) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(header)
+                .order(header[5] == 1 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        if (buffer.getInt(20) != 1) {
+            return false;
+        }
+        long programHeaders = is64 ? buffer.getLong(32) : buffer.getInt(28) & 0xFFFFFFFFL;
+        long sectionHeaders = is64 ? buffer.getLong(40) : buffer.getInt(32) & 0xFFFFFFFFL;
+        int position = is64 ? 52 : 40;
+        int elfHeaderSize = buffer.getShort(position) & 0xFFFF;
+        int programHeaderSize = buffer.getShort(position + 2) & 0xFFFF;
+        int programHeaderCount = buffer.getShort(position + 4) & 0xFFFF;
+        int sectionHeaderSize = buffer.getShort(position + 6) & 0xFFFF;
+        int sectionHeaderCount = buffer.getShort(position + 8) & 0xFFFF;
+        return elfHeaderSize == headerSize
+                && isTableValid(programHeaders, programHeaderSize, programHeaderCount, is64 ? 56 : 32, ciphertext.length)
+                && isTableValid(sectionHeaders, sectionHeaderSize, sectionHeaderCount, is64 ? 64 : 40, ciphertext.length);
+    }
+
+    private static boolean isTableValid(long offset, int entrySize, int count, int expectedEntrySize, long length) {
+        if (count == 0) {
+            return true;
+        }
+        return entrySize == expectedEntrySize && offset >= 0 && offset + (long) entrySize * count <= length;
+    }
+}
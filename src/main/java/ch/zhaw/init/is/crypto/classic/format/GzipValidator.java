@@ -0,0 +1,65 @@
+package ch.zhaw.init.is.crypto.classic.format;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Validator of gzip files (RFC 1952). The confirmation inflates all members
+ * and checks their CRCs and sizes.
+ */
+public class GzipValidator implements PlaintextValidator {
+    private static final byte[] MAGIC = {0x1F, (byte) 0x8B, 0x08};
+    private static final int RESERVED_FLAGS = 0xE0;
+    private static final int MAX_OS = 13;
+    private static final int UNKNOWN_OS = 255;
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#getName()
+     */
+    @Override
+    public String getName() {
+        return "gzip";
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#getMagic()
+     */
+    @Override
+    public byte[] getMagic() {
+        return MAGIC.clone();
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#isPlausible(byte[], int[])
+     */
+    @Override
+    public boolean isPlausible(byte[] ciphertext, int[] key) {
+        byte[] header = PlaintextValidator.decrypt(ciphertext, key, 0, 10);
+        if (header.length < 10) {
+            return false;
+        }
+        int flags = header[3] & 0xFF;
+        int extraFlags = header[8] & 0xFF;
+        int os = header[9] & 0xFF;
+        return (flags & RESERVED_FLAGS) == 0 && (extraFlags == 0 || extraFlags == 2 || extraFlags == 4)
+                && (os <= MAX_OS || os == UNKNOWN_OS);
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#confirm(byte[], int[])
+     */
+    @Override
+    public boolean confirm(byte[] ciphertext, int[] key) {
+        byte[] buffer = new byte[64 * 1024];
+        try (GZIPInputStream in = new GZIPInputStream(
+                new ByteArrayInputStream(PlaintextValidator.decrypt(ciphertext, key)))) {
+            while (in.read(buffer) != -1) {
+                // reading checks the CRC and the size of every member
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package ch.zhaw.init.is.crypto.classic.format;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Validator of PDF documents. The plausibility check covers the version in
+ * the header, the confirmation looks for the cross-reference pointer and the
+ * end-of-file marker in the trailer.
+ */
+public class PdfValidator implements PlaintextValidator {
+    private static final byte[] MAGIC = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+    private static final int TRAILER_SIZE = 1024;
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#getName()
+     */
+    @Override
+    public String getName() {
+        return "pdf";
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#getMagic()
+     */
+    @Override
+    public byte[] getMagic() {
+        return MAGIC.clone();
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#getMostFrequentByte()
+     */
+    @Override
+    public int getMostFrequentByte() {
+        // The objects, dictionaries and cross-reference table are text
+        return ' ';
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#isPlausible(byte[], int[])
+     */
+    @Override
+    public boolean isPlausible(byte[] ciphertext, int[] key) {
+        byte[] header = PlaintextValidator.decrypt(ciphertext, key, 0, 8);
+        return header.length == 8 && (header[5] == '1' || header[5] == '2') && header[6] == '.'
+                && header[7] >= '0' && header[7] <= '9';
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#confirm(byte[], int[])
+     */
+    @Override
+    public boolean confirm(byte[] ciphertext, int[] key) {
+        int from = Math.max(0, ciphertext.length - TRAILER_SIZE);
+        String trailer = new String(PlaintextValidator.decrypt(ciphertext, key, from, ciphertext.length),
+                StandardCharsets.ISO_8859_1);
+        return trailer.contains("%%EOF") && trailer.contains("startxref");
+    }
+}
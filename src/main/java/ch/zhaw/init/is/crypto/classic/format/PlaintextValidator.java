@@ -0,0 +1,91 @@
+package ch.zhaw.init.is.crypto.classic.format;
+
+/**
+ * Validator of a plaintext format, used to recognize the correct key among
+ * candidate keys of data that has been encrypted with the XOR method.
+ * <p>
+ * A candidate key is validated in three steps of increasing cost:
+ * <ol>
+ * <li>magic: the known plaintext ({@link #getMagic()} at {@link #getMagicOffset()})
+ * must be produced by the key. The magic is also used to derive key bytes
+ * directly from the ciphertext.
+ * <li>{@link #isPlausible}: a cheap check of the structure of the header
+ * <li>{@link #confirm}: an expensive check of the whole plaintext
+ * </ol>
+ * Implementations must be thread-safe. Further validators can be registered
+ * with the {@link java.util.ServiceLoader} mechanism (see {@link PlaintextValidators}).
+ */
+public interface PlaintextValidator {
+    /**
+     * @return The short name of the format (e.g., gzip)
+     */
+    String getName();
+
+    /**
+     * @return The bytes every plaintext of this format contains at the magic offset
+     */
+    byte[] getMagic();
+
+    /**
+     * @return The offset of the magic in the plaintext
+     */
+    default int getMagicOffset() {
+        return 0;
+    }
+
+    /**
+     * @return The assumed most frequent byte of plaintexts of this format; the
+     * candidate key bytes are the most frequent ciphertext bytes XOR-ed with it
+     */
+    default int getMostFrequentByte() {
+        return 0;
+    }
+
+    /**
+     * Checks the structure of the header of the plaintext. Called only for keys
+     * matching the magic.
+     *
+     * @param ciphertext The encrypted data
+     * @param key        The candidate key
+     * @return true, if the header is plausible
+     */
+    boolean isPlausible(byte[] ciphertext, int[] key);
+
+    /**
+     * Checks the whole plaintext. Called only for plausible keys.
+     *
+     * @param ciphertext The encrypted data
+     * @param key        The candidate key
+     * @return true, if the plaintext is valid
+     */
+    boolean confirm(byte[] ciphertext, int[] key);
+
+    /**
+     * Decrypts a part of the ciphertext.
+     *
+     * @param ciphertext The encrypted data
+     * @param key        The key
+     * @param from       The position of the first byte to decrypt
+     * @param to         The position after the last byte to decrypt (limited to the length of the ciphertext)
+     * @return The plaintext of the part
+     */
+    static byte[] decrypt(byte[] ciphertext, int[] key, int from, int to) {
+        to = Math.min(to, ciphertext.length);
+        byte[] plaintext = new byte[Math.max(0, to - from)];
+        for (int i = 0; i < plaintext.length; i++) {
+            plaintext[i] = (byte) (ciphertext[from + i] ^ key[(from + i) % key.length]);
+        }
+        return plaintext;
+    }
+
+    /**
+     * Decrypts the whole ciphertext.
+     *
+     * @param ciphertext The encrypted data
+     * @param key        The key
+     * @return The plaintext
+     */
+    static byte[] decrypt(byte[] ciphertext, int[] key) {
+        return decrypt(ciphertext, key, 0, ciphertext.length);
+    }
+}
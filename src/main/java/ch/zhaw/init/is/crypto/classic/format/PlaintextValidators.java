@@ -0,0 +1,64 @@
+package ch.zhaw.init.is.crypto.classic.format;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * This class implements the registry of the {@link PlaintextValidator}s.
+ * <p>
+ * Besides the built-in validators (zip, gzip, zlib, png, pdf, elf), the
+ * validators registered in <tt>META-INF/services/ch.zhaw.init.is.crypto.classic.format.PlaintextValidator</tt>
+ * on the class path are available.
+ */
+public class PlaintextValidators {
+    /**
+     * Name selecting all available validators.
+     */
+    public static final String ALL = "all";
+
+    private PlaintextValidators() {
+    }
+
+    /**
+     * @return The built-in validators
+     */
+    public static List<PlaintextValidator> getBuiltIn() {
+        return Arrays.asList(new ZipValidator(), new GzipValidator(), new ZlibValidator(),
+                new PngValidator(), new PdfValidator(), new ElfValidator());
+    }
+
+    /**
+     * @return The built-in validators and the ones registered with the service loader
+     */
+    public static List<PlaintextValidator> getAvailable() {
+        List<PlaintextValidator> validators = new ArrayList<>(getBuiltIn());
+        for (PlaintextValidator validator : ServiceLoader.load(PlaintextValidator.class)) {
+            validators.add(validator);
+        }
+        return validators;
+    }
+
+    /**
+     * Selects validators by name.
+     *
+     * @param names Comma separated names of the formats or {@value #ALL}
+     * @return The validators
+     * @throws IllegalArgumentException if a format is unknown
+     */
+    public static List<PlaintextValidator> get(String names) {
+        List<PlaintextValidator> available = getAvailable();
+        if (names.equals(ALL)) {
+            return available;
+        }
+        List<PlaintextValidator> validators = new ArrayList<>();
+        for (String name : names.split(",")) {
+            validators.add(available.stream()
+                    .filter(v -> v.getName().equalsIgnoreCase(name.trim()))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown format: " + name)));
+        }
+        return validators;
+    }
+}
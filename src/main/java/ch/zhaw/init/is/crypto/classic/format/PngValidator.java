@@ -0,0 +1,88 @@
+package ch.zhaw.init.is.crypto.classic.format;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Validator of PNG images. The plausibility check covers the IHDR chunk, the
+ * confirmation checks the CRCs of all chunks up to IEND.
+ */
+public class PngValidator implements PlaintextValidator {
+    private static final byte[] MAGIC = {(byte) 0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A};
+    private static final byte[] IHDR = "IHDR".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] IEND = "IEND".getBytes(StandardCharsets.US_ASCII);
+    private static final int IHDR_LENGTH = 13;
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#getName()
+     */
+    @Override
+    public String getName() {
+        return "png";
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#getMagic()
+     */
+    @Override
+    public byte[] getMagic() {
+        return MAGIC.clone();
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#isPlausible(byte[], int[])
+     */
+    @Override
+    public boolean isPlausible(byte[] ciphertext, int[] key) {
+        byte[] header = PlaintextValidator.decrypt(ciphertext, key, 0, 33);
+        if (header.length < 33 || getInt(header, 8) != IHDR_LENGTH || !isType(header, 12, IHDR)) {
+            return false;
+        }
+        int bitDepth = header[24] & 0xFF;
+        int colorType = header[25] & 0xFF;
+        return getInt(header, 16) != 0 && getInt(header, 20) != 0
+                && Integer.bitCount(bitDepth) == 1 && bitDepth <= 16
+                && (colorType == 0 || colorType == 2 || colorType == 3 || colorType == 4 || colorType == 6)
+                && header[26] == 0 && header[27] == 0 && (header[28] & 0xFF) <= 1;
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#confirm(byte[], int[])
+     */
+    @Override
+    public boolean confirm(byte[] ciphertext, int[] key) {
+        byte[] png = PlaintextValidator.decrypt(ciphertext, key);
+        CRC32 crc = new CRC32();
+        long offset = MAGIC.length;
+        while (offset + 12 <= png.length) {
+            long length = getInt(png, (int) offset) & 0xFFFFFFFFL;
+            if (offset + 12 + length > png.length) {
+                return false;
+            }
+            crc.reset();
+            crc.update(png, (int) offset + 4, (int) length + 4);
+            if (crc.getValue() != (getInt(png, (int) (offset + 8 + length)) & 0xFFFFFFFFL)) {
+                return false;
+            }
+            if (isType(png, (int) offset + 4, IEND)) {
+                return true;
+            }
+            offset += 12 + length;
+        }
+        return false;
+    }
+
+    private static int getInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16
+                | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+    }
+
+    private static boolean isType(byte[] data, int offset, byte[] type) {
+        for (int i = 0; i < type.length; i++) {
+            if (data[offset + i] != type[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
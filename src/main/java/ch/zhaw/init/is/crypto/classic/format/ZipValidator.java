@@ -0,0 +1,51 @@
+package ch.zhaw.init.is.crypto.classic.format;
+
+import ch.zhaw.init.is.crypto.classic.EncryptedZipFile;
+
+/**
+ * Validator of ZIP files. The confirmation is done by {@link EncryptedZipFile#tryDecryption}.
+ */
+public class ZipValidator implements PlaintextValidator {
+    private static final byte[] MAGIC = {0x50, 0x4B, 0x03, 0x04};
+    private static final int MAX_VERSION = 63;
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#getName()
+     */
+    @Override
+    public String getName() {
+        return "zip";
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#getMagic()
+     */
+    @Override
+    public byte[] getMagic() {
+        return MAGIC.clone();
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#isPlausible(byte[], int[])
+     */
+    @Override
+    public boolean isPlausible(byte[] ciphertext, int[] key) {
+        byte[] header = PlaintextValidator.decrypt(ciphertext, key, 0, 30);
+        if (header.length < 30) {
+            return false;
+        }
+        int version = header[4] & 0xFF;
+        int method = (header[8] & 0xFF) | (header[9] & 0xFF) << 8;
+        return version <= MAX_VERSION && header[5] == 0 && (method == 0 || method == 8);
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#confirm(byte[], int[])
+     */
+    @Override
+    public boolean confirm(byte[] ciphertext, int[] key) {
+        try (EncryptedZipFile file = EncryptedZipFile.create(ciphertext)) {
+            return file.tryDecryption(key);
+        }
+    }
+}
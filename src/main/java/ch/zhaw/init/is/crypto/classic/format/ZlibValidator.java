@@ -0,0 +1,64 @@
+package ch.zhaw.init.is.crypto.classic.format;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Validator of zlib streams (RFC 1950) with a 32 KB window, the most common
+ * kind. The confirmation inflates the whole stream and checks its Adler-32.
+ */
+public class ZlibValidator implements PlaintextValidator {
+    private static final byte[] MAGIC = {0x78};
+    private static final int PRESET_DICTIONARY = 0x20;
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#getName()
+     */
+    @Override
+    public String getName() {
+        return "zlib";
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#getMagic()
+     */
+    @Override
+    public byte[] getMagic() {
+        return MAGIC.clone();
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#isPlausible(byte[], int[])
+     */
+    @Override
+    public boolean isPlausible(byte[] ciphertext, int[] key) {
+        byte[] header = PlaintextValidator.decrypt(ciphertext, key, 0, 2);
+        if (header.length < 2) {
+            return false;
+        }
+        int check = (header[0] & 0xFF) << 8 | (header[1] & 0xFF);
+        return check % 31 == 0 && (header[1] & PRESET_DICTIONARY) == 0;
+    }
+
+    /* (non-Javadoc)
+     * @see ch.zhaw.init.is.crypto.classic.format.PlaintextValidator#confirm(byte[], int[])
+     */
+    @Override
+    public boolean confirm(byte[] ciphertext, int[] key) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(PlaintextValidator.decrypt(ciphertext, key));
+            byte[] buffer = new byte[64 * 1024];
+            while (!inflater.finished()) {
+                if (inflater.inflate(buffer) == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (DataFormatException e) {
+            return false;
+        } finally {
+            inflater.end();
+        }
+    }
+}
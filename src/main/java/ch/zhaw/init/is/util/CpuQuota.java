@@ -0,0 +1,98 @@
+package ch.zhaw.init.is.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * This class implements the detection of the number of processors the JVM may
+ * use, taking the CPU quota of a container (Linux cgroup) into account.
+ * <p>
+ * A quota of, e.g., 150000 us per period of 100000 us allows 1.5 processors on
+ * average; more busy threads than that are throttled by the kernel. The quota is
+ * read from <tt>cpu.max</tt> (cgroup v2) or <tt>cpu.cfs_quota_us</tt> and
+ * <tt>cpu.cfs_period_us</tt> (cgroup v1) and rounded up. Recent JVMs already
+ * apply the quota to {@link Runtime#availableProcessors()}, but older ones and
+ * JVMs with the container support disabled do not. Without a readable quota
+ * (e.g., on other operating systems), the number of the JVM is used.
+ * <p>
+ * A thread can lower the number reported to it (see {@link #setThreadLimit(int)}).
+ */
+public class CpuQuota {
+    private static final Path CGROUP_V2 = Paths.get("/sys/fs/cgroup/cpu.max");
+    private static final Path[] CGROUP_V1 = {Paths.get("/sys/fs/cgroup/cpu"), Paths.get("/sys/fs/cgroup/cpu,cpuacct")};
+    private static final int AVAILABLE_PROCESSORS = detectAvailableProcessors();
+    private static final ThreadLocal<Integer> THREAD_LIMIT = new ThreadLocal<>();
+
+    private CpuQuota() {
+    }
+
+    /**
+     * @return The number of available processors, limited by the CPU quota (at least 1)
+     * and by the limit of the current thread, if any; detected once per JVM
+     */
+    public static int getAvailableProcessors() {
+        Integer limit = THREAD_LIMIT.get();
+        return limit != null ? Math.min(limit, AVAILABLE_PROCESSORS) : AVAILABLE_PROCESSORS;
+    }
+
+    /**
+     * Limits the number of processors reported to the current thread until
+     * {@link #clearThreadLimit()}, e.g., to the share of one of several jobs
+     * running in the same JVM. Searches set up on this thread use at most this
+     * many threads.
+     *
+     * @param processors The maximum number of processors (at least 1)
+     */
+    public static void setThreadLimit(int processors) {
+        if (processors < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1");
+        }
+        THREAD_LIMIT.set(processors);
+    }
+
+    /**
+     * Removes the limit of the current thread.
+     */
+    public static void clearThreadLimit() {
+        THREAD_LIMIT.remove();
+    }
+
+    private static int detectAvailableProcessors() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        long quota = -1;
+        long period = -1;
+        try {
+            if (Files.isReadable(CGROUP_V2)) {
+                String[] fields = readFirstLine(CGROUP_V2).trim().split("\\s+");
+                if (!fields[0].equals("max")) {
+                    quota = Long.parseLong(fields[0]);
+                    period = Long.parseLong(fields[1]);
+                }
+            } else {
+                for (Path directory : CGROUP_V1) {
+                    Path quotaFile = directory.resolve("cpu.cfs_quota_us");
+                    if (Files.isReadable(quotaFile)) {
+                        quota = Long.parseLong(readFirstLine(quotaFile).trim());
+                        period = Long.parseLong(readFirstLine(directory.resolve("cpu.cfs_period_us")).trim());
+                        break;
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // No usable quota
+            return processors;
+        }
+        if (quota <= 0 || period <= 0) {
+            return processors;
+        }
+        return (int) Math.max(1, Math.min(processors, (quota + period - 1) / period));
+    }
+
+    private static String readFirstLine(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file);
+        return lines.isEmpty() ? "" : lines.get(0);
+    }
+}
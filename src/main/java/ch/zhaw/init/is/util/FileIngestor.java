@@ -0,0 +1,100 @@
+package ch.zhaw.init.is.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * This class implements the concurrent reading of many files.
+ * <p>
+ * Every file is read in a thread of its own, so that waiting for the disk
+ * does not block any other work. On Java 21 and later, virtual threads are
+ * used, which makes thousands of concurrent reads cheap; on older runtimes,
+ * platform threads are used. The processing of the content is left to the
+ * caller, typically a small pool of CPU workers.
+ * <p>
+ * The number of files being read or processed at the same time is limited by
+ * the I/O concurrency. This also bounds the memory used by file contents.
+ */
+public class FileIngestor implements AutoCloseable {
+    private final Semaphore permits;
+    private final ExecutorService ioThreads;
+
+    /**
+     * Constructor.
+     *
+     * @param ioConcurrency The maximum number of files being read or processed at the same time
+     */
+    public FileIngestor(int ioConcurrency) {
+        if (ioConcurrency < 1) {
+            throw new IllegalArgumentException("I/O concurrency must be at least 1");
+        }
+        permits = new Semaphore(ioConcurrency);
+        ioThreads = createThreadPerTaskExecutor();
+    }
+
+    private static ExecutorService createThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "file-ingestor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Reads the file on an I/O thread and passes its content to process. Blocks
+     * the caller while the I/O concurrency is exhausted.
+     *
+     * @param file    The file to read
+     * @param process Processes the content; returns a future that completes when
+     *                the content is no longer needed
+     * @return A future that completes when the processing has completed, or
+     * exceptionally with an {@link UncheckedIOException} if the file could not be read
+     * @throws InterruptedException if interrupted while waiting for a permit
+     */
+    public CompletableFuture<Void> ingest(Path file, Function<byte[], CompletableFuture<?>> process)
+            throws InterruptedException {
+        permits.acquire();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        done.whenComplete((v, e) -> permits.release());
+        try {
+            ioThreads.execute(() -> {
+                try {
+                    byte[] content = Files.readAllBytes(file);
+                    process.apply(content).whenComplete((v, e) -> {
+                        if (e != null) {
+                            done.completeExceptionally(e);
+                        } else {
+                            done.complete(null);
+                        }
+                    });
+                } catch (IOException e) {
+                    done.completeExceptionally(new UncheckedIOException(e));
+                } catch (RuntimeException e) {
+                    done.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            done.completeExceptionally(e);
+        }
+        return done;
+    }
+
+    /**
+     * Stops accepting files. Reads in progress are completed.
+     */
+    @Override
+    public void close() {
+        ioThreads.shutdown();
+    }
+}
@@ -0,0 +1,110 @@
+package ch.zhaw.init.is.util;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class implements a low-overhead latency histogram.
+ * <p>
+ * Latencies are recorded in nanoseconds into power-of-two buckets
+ * (bucket i holds latencies in [2^(i-1), 2^i) ns). All counts are
+ * striped {@link LongAdder}s, so recording from many threads does not
+ * contend on a single memory location. Percentiles are therefore
+ * approximate and reported as the upper bound of their bucket.
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 64;
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder totalNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos The latency in ns
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos))].increment();
+        totalNanos.add(nanos);
+    }
+
+    /**
+     * Records the time elapsed since startNanos.
+     *
+     * @param startNanos The start time as returned by {@link System#nanoTime()}
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Removes all recorded latencies.
+     */
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        totalNanos.reset();
+    }
+
+    /**
+     * @return The number of recorded latencies
+     */
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * @return The mean latency in ns (0, if nothing has been recorded)
+     */
+    public double getMeanNanos() {
+        long count = getCount();
+        return count == 0 ? 0 : totalNanos.sum() / (double) count;
+    }
+
+    /**
+     * Returns an approximate percentile.
+     *
+     * @param percentile The percentile in 0..100
+     * @return The upper bound in ns of the bucket containing the percentile
+     * (0, if nothing has been recorded)
+     */
+    public long getPercentileNanos(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : 1L << i);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "count=%d mean=%.0fns p50=%dns p99=%dns",
+                getCount(), getMeanNanos(), getPercentileNanos(50), getPercentileNanos(99));
+    }
+}
@@ -0,0 +1,86 @@
+package ch.zhaw.init.is.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class implements a registry of named counters, gauges and latency histograms.
+ * <p>
+ * Counters are striped {@link LongAdder}s and histograms are
+ * {@link LatencyHistogram}s, so both can be updated from many threads
+ * at low cost. Callers on hot paths should look up their counters once
+ * and keep the references. Gauges are {@link AtomicLong}s that are set to
+ * the current value of a setting or measurement instead of being added to.
+ */
+public class Metrics {
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> gauges = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the counter with the given name, creating it if necessary.
+     *
+     * @param name The name of the counter
+     * @return The counter
+     */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    /**
+     * Returns the gauge with the given name, creating it if necessary.
+     *
+     * @param name The name of the gauge
+     * @return The gauge
+     */
+    public AtomicLong gauge(String name) {
+        return gauges.computeIfAbsent(name, n -> new AtomicLong());
+    }
+
+    /**
+     * Returns the histogram with the given name, creating it if necessary.
+     *
+     * @param name The name of the histogram
+     * @return The histogram
+     */
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    /**
+     * Resets all counters and histograms. Gauges keep their values, which are
+     * not accumulated.
+     */
+    public void reset() {
+        counters.values().forEach(LongAdder::reset);
+        histograms.values().forEach(LatencyHistogram::reset);
+    }
+
+    /**
+     * @return The current values of all counters, sorted by name
+     */
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        return values;
+    }
+
+    /**
+     * @return The current values of all gauges, sorted by name
+     */
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new TreeMap<>();
+        gauges.forEach((name, gauge) -> values.put(name, gauge.get()));
+        return values;
+    }
+
+    /**
+     * @return The histograms, sorted by name
+     */
+    public Map<String, LatencyHistogram> getHistograms() {
+        return new TreeMap<>(histograms);
+    }
+}
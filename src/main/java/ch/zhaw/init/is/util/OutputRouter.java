@@ -0,0 +1,122 @@
+package ch.zhaw.init.is.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * This class implements an output stream that forwards the bytes written by a
+ * thread to the target registered for this thread, or to a fallback stream.
+ * <p>
+ * Installed as standard output (wrapped in a {@link java.io.PrintStream}), it
+ * lets several applications run concurrently in one JVM while each of them
+ * writes to its own destination. Only the thread that registered a target is
+ * routed; threads started by it (e.g., pool threads reporting progress) write
+ * to the fallback stream, unless their task is wrapped with
+ * {@link #inheritTargets(Consumer)}.
+ */
+public class OutputRouter extends OutputStream {
+    private static final List<OutputRouter> ROUTERS = new CopyOnWriteArrayList<>();
+
+    private final OutputStream fallback;
+    private final ThreadLocal<OutputStream> target = new ThreadLocal<>();
+
+    /**
+     * Constructor.
+     *
+     * @param fallback The stream for threads without a target
+     */
+    public OutputRouter(OutputStream fallback) {
+        this.fallback = fallback;
+        ROUTERS.add(this);
+    }
+
+    /**
+     * Wraps a listener so that it writes to the targets the current thread has
+     * in all routers, whichever thread calls it (e.g., the shared thread that
+     * reports the progress of all jobs).
+     *
+     * @param listener The listener
+     * @param <T>      The type of the value the listener receives
+     * @return The wrapped listener, or the listener itself if the current thread has no targets
+     */
+    public static <T> Consumer<T> inheritTargets(Consumer<T> listener) {
+        Map<OutputRouter, OutputStream> targets = new HashMap<>();
+        for (OutputRouter router : ROUTERS) {
+            OutputStream out = router.target.get();
+            if (out != null) {
+                targets.put(router, out);
+            }
+        }
+        if (targets.isEmpty()) {
+            return listener;
+        }
+        return value -> {
+            Map<OutputRouter, OutputStream> previous = new HashMap<>();
+            targets.forEach((router, out) -> {
+                previous.put(router, router.target.get());
+                router.target.set(out);
+            });
+            try {
+                listener.accept(value);
+            } finally {
+                previous.forEach((router, out) -> {
+                    if (out != null) {
+                        router.target.set(out);
+                    } else {
+                        router.target.remove();
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Routes the output of the current thread to the target until {@link #unroute()}.
+     *
+     * @param out The target
+     */
+    public void route(OutputStream out) {
+        target.set(out);
+    }
+
+    /**
+     * Routes the output of the current thread to the fallback stream again.
+     */
+    public void unroute() {
+        target.remove();
+    }
+
+    private OutputStream current() {
+        OutputStream out = target.get();
+        return out != null ? out : fallback;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#write(int)
+     */
+    @Override
+    public void write(int b) throws IOException {
+        current().write(b);
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#write(byte[], int, int)
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        current().write(b, off, len);
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#flush()
+     */
+    @Override
+    public void flush() throws IOException {
+        current().flush();
+    }
+}
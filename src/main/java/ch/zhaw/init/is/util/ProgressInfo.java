@@ -17,4 +17,12 @@ public interface ProgressInfo {
      */
     String getUnit();
 
+    /**
+     * @return The detailed metrics (counters and latencies) of the task or
+     * null, if there are none
+     */
+    default Metrics getMetrics() {
+        return null;
+    }
+
 }
@@ -0,0 +1,169 @@
+package ch.zhaw.init.is.util;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class samples the progress of a task ({@link ProgressInfo}) and
+ * derives the live rate, the estimated remaining time (ETA) and the
+ * coverage from it. The ETA is the uncovered part of the work divided by the
+ * coverage gained per second, so that work covered without being done in the
+ * unit of the rate (e.g., keys skipped instead of tried) counts on both sides. Together with the {@link Metrics} of the task, the
+ * results are available through JMX and as a machine-readable log line
+ * of space separated key=value pairs.
+ */
+public class ProgressMonitor implements ProgressMonitorMXBean {
+    private final ProgressInfo info;
+    private double lastProgress;
+    private double lastPercent;
+    private long lastSampleNanos;
+    private volatile double rate;
+    private volatile double etaSeconds = -1;
+    private ObjectName objectName;
+
+    public ProgressMonitor(ProgressInfo info) {
+        this.info = info;
+        lastProgress = info.getProgressAbsolute();
+        lastPercent = info.getProgressInPercent();
+        lastSampleNanos = System.nanoTime();
+    }
+
+    /**
+     * Takes a sample of the progress and updates the rate and the ETA
+     * from the difference to the previous sample.
+     */
+    public synchronized void sample() {
+        double current = info.getProgressAbsolute();
+        long now = System.nanoTime();
+        double percent = info.getProgressInPercent();
+        double seconds = (now - lastSampleNanos) / 1e9;
+        double percentPerSecond = 0;
+        if (seconds > 0) {
+            rate = (current - lastProgress) / seconds;
+            percentPerSecond = (percent - lastPercent) / seconds;
+        }
+        if (percentPerSecond > 0 && percent < 100) {
+            etaSeconds = (100 - percent) / percentPerSecond;
+        } else {
+            etaSeconds = -1;
+        }
+        lastProgress = current;
+        lastPercent = percent;
+        lastSampleNanos = now;
+    }
+
+    /**
+     * Returns the state at the last sample as a machine-readable line, e.g.
+     * <tt>progress unit=trials done=1200 rate=240.0 coverage=1.17 eta=85 trials=1200 ...</tt>.
+     * Rate is per second, coverage in percent and ETA in seconds (-1 if unknown).
+     *
+     * @return The log line
+     */
+    public String toLogLine() {
+        StringBuilder line = new StringBuilder("progress");
+        line.append(" unit=").append(getUnit());
+        line.append(" done=").append((long) getProgressAbsolute());
+        line.append(String.format(Locale.ROOT, " rate=%.1f coverage=%.4f eta=%.0f",
+                getRate(), getProgressInPercent(), getEtaSeconds()));
+        Metrics metrics = info.getMetrics();
+        if (metrics != null) {
+            metrics.getCounters().forEach((name, value) -> line.append(' ').append(name).append('=').append(value));
+            metrics.getGauges().forEach((name, value) -> line.append(' ').append(name).append('=').append(value));
+            metrics.getHistograms().forEach((name, histogram) -> line.append(String.format(Locale.ROOT,
+                    " %s.mean=%.0f %s.p99=%d", name, histogram.getMeanNanos(), name, histogram.getPercentileNanos(99))));
+        }
+        return line.toString();
+    }
+
+    /**
+     * Registers this monitor with the platform MBean server. If a monitor of a
+     * task with the same name is registered (e.g., a concurrent job of the daemon
+     * on the same file), a number is appended to the name.
+     *
+     * @param name The name of the monitored task
+     */
+    public void register(String name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (int instance = 1; ; instance++) {
+                String taskName = instance == 1 ? name : name + " #" + instance;
+                ObjectName candidate = new ObjectName("ch.zhaw.init.is:type=Progress,name=" + ObjectName.quote(taskName));
+                try {
+                    server.registerMBean(this, candidate);
+                    objectName = candidate;
+                    return;
+                } catch (InstanceAlreadyExistsException e) {
+                    // Taken by another monitor; try the next number
+                }
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Unregisters this monitor from the platform MBean server, if registered.
+     */
+    public void unregister() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException ignored) {
+            }
+            objectName = null;
+        }
+    }
+
+    @Override
+    public String getUnit() {
+        return info.getUnit();
+    }
+
+    @Override
+    public double getProgressAbsolute() {
+        return info.getProgressAbsolute();
+    }
+
+    @Override
+    public double getProgressInPercent() {
+        return info.getProgressInPercent();
+    }
+
+    @Override
+    public double getRate() {
+        return rate;
+    }
+
+    @Override
+    public double getEtaSeconds() {
+        return etaSeconds;
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Metrics metrics = info.getMetrics();
+        return metrics == null ? new TreeMap<>() : metrics.getCounters();
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        Metrics metrics = info.getMetrics();
+        return metrics == null ? new TreeMap<>() : metrics.getGauges();
+    }
+
+    @Override
+    public Map<String, String> getLatencies() {
+        Map<String, String> latencies = new TreeMap<>();
+        Metrics metrics = info.getMetrics();
+        if (metrics != null) {
+            metrics.getHistograms().forEach((name, histogram) -> latencies.put(name, histogram.toString()));
+        }
+        return latencies;
+    }
+}
@@ -0,0 +1,49 @@
+package ch.zhaw.init.is.util;
+
+import java.util.Map;
+
+/**
+ * JMX view of a {@link ProgressMonitor}.
+ */
+public interface ProgressMonitorMXBean {
+
+    /**
+     * @return The unit of the absolute measurement (e.g., trials)
+     */
+    String getUnit();
+
+    /**
+     * @return The current progress as absolute number
+     */
+    double getProgressAbsolute();
+
+    /**
+     * @return The current progress in percent
+     */
+    double getProgressInPercent();
+
+    /**
+     * @return The rate in units per second measured at the last sample
+     */
+    double getRate();
+
+    /**
+     * @return The estimated remaining time in seconds, or -1 if unknown
+     */
+    double getEtaSeconds();
+
+    /**
+     * @return The values of all counters
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * @return The values of all gauges
+     */
+    Map<String, Long> getGauges();
+
+    /**
+     * @return A summary (count, mean, p50, p99) of all latency histograms
+     */
+    Map<String, String> getLatencies();
+}
@@ -1,31 +1,27 @@
 package ch.zhaw.init.is.util;
 
-import java.text.DecimalFormat;
 import java.util.TimerTask;
 
 /**
  * This class implements a simple TimerTask printing the
- * current progress of a task.
+ * current progress of a task as a machine-readable log line
+ * (see {@link ProgressMonitor#toLogLine()}).
  *
  * @author tebe
  */
 public class ProgressTask extends TimerTask {
-    private ProgressInfo cracker;
-    private double lastTotalTrials;
-    private long lastTimestamp;
+    private ProgressMonitor monitor;
 
     public ProgressTask(ProgressInfo cracker) {
-        this.cracker = cracker;
-        lastTimestamp = System.currentTimeMillis();
+        this(new ProgressMonitor(cracker));
+    }
+
+    public ProgressTask(ProgressMonitor monitor) {
+        this.monitor = monitor;
     }
 
     public void run() {
-        double current = cracker.getProgressAbsolute();
-        double diff = current - lastTotalTrials;
-        long diffTime = System.currentTimeMillis() - lastTimestamp;
-        String percentProgress = new DecimalFormat("#0.00").format(cracker.getProgressInPercent());
-        System.out.println(diff / (diffTime / 1000) + " " + cracker.getUnit() + "/s (Completed: " + percentProgress + "%)");
-        lastTotalTrials = current;
-        lastTimestamp = diffTime + lastTimestamp;
+        monitor.sample();
+        System.out.println(monitor.toLogLine());
     }
 }
@@ -0,0 +1,117 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import ch.zhaw.init.is.util.Metrics;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link AdaptiveKeySearch} finds the same key as a sequential
+ * search, however the trials of its workers interleave.
+ */
+public class AdaptiveKeySearchTest {
+    private static final int ROUNDS = 10;
+    private static final int WORKERS = 4;
+
+    private final Random random = new Random(7);
+
+    @Test
+    public void findsTheFirstValidKeyOfTheGenerator() {
+        for (int round = 0; round < ROUNDS; round++) {
+            ByteFrequencyTable[] tables = randomTables(4);
+            List<int[]> keys = new ArrayList<>();
+            KeyGenerator all = new KeyGenerator(tables, 4, 0, KeyGenerator.Order.BEST_FIRST);
+            int[] k;
+            while ((k = all.getNextCandidateKey()) != null) {
+                keys.add(k);
+            }
+            int first = 1 + random.nextInt(keys.size() / 2);
+            Set<List<Integer>> valid = new HashSet<>();
+            valid.add(toList(keys.get(first)));
+            for (int i = 0; i < 3; i++) {
+                valid.add(toList(keys.get(first + 1 + random.nextInt(keys.size() - first - 1))));
+            }
+
+            int[] key = new AdaptiveKeySearch(new KeyGenerator(tables, 4, 0, KeyGenerator.Order.BEST_FIRST),
+                    WORKERS, new Metrics()).search(candidate -> {
+                // Trials of 50 us give batches of about 20 keys
+                spin(50000);
+                if (Arrays.equals(candidate, keys.get(first - 1))) {
+                    // Holds up the batch of the first valid key while later batches find the other ones
+                    sleep(20);
+                }
+                return valid.contains(toList(candidate));
+            }, generated -> false);
+
+            assertArrayEquals(keys.get(first), key);
+        }
+    }
+
+    @Test
+    public void returnsNullIfNoKeyIsValid() {
+        int[] key = new AdaptiveKeySearch(new KeyGenerator(randomTables(2), 4, 0, KeyGenerator.Order.BEST_FIRST),
+                WORKERS, new Metrics()).search(candidate -> false, generated -> false);
+        assertNull(key);
+    }
+
+    @Test
+    public void rethrowsTheFailureOfTheValidator() {
+        for (int workers : new int[]{1, WORKERS}) {
+            IllegalStateException failure = new IllegalStateException("validator failed");
+            try {
+                new AdaptiveKeySearch(new KeyGenerator(randomTables(2), 4, 0, KeyGenerator.Order.BEST_FIRST),
+                        workers, new Metrics()).search(candidate -> {
+                    throw failure;
+                }, generated -> false);
+                assertTrue("No exception thrown with " + workers + " workers", false);
+            } catch (CompletionException e) {
+                assertEquals(failure, e.getCause());
+            }
+        }
+    }
+
+    private ByteFrequencyTable[] randomTables(int keylength) {
+        ByteFrequencyTable[] tables = new ByteFrequencyTable[keylength];
+        for (int slot = 0; slot < keylength; slot++) {
+            tables[slot] = new ByteFrequencyTable();
+            for (int i = 0; i < 200; i++) {
+                tables[slot].addByte(random.nextInt(ByteFrequencyTable.BYTE_VALUES));
+            }
+        }
+        return tables;
+    }
+
+    private static void spin(long nanos) {
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < nanos) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<Integer> toList(int[] key) {
+        List<Integer> list = new ArrayList<>();
+        for (int keyByte : key) {
+            list.add(keyByte);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,269 @@
+package ch.zhaw.init.is.crypto.classic;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the enumeration orders of {@link KeyGenerator}, the known plaintext
+ * constraints and {@link DepthFirstKeySearch} with a plain enumeration on small
+ * random byte frequency tables: they all visit the same keys, only in a
+ * different order or with the keys removed that their rules exclude.
+ */
+public class KeyEnumerationTest {
+    private static final int ROUNDS = 50;
+    private static final int MAX_KEYLENGTH = 4;
+    private static final int MAX_DEPTH = 4;
+    private static final int CIPHERTEXT_LENGTH = 32;
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void bestFirstGeneratesTheOdometerKeysByRankSum() {
+        for (int round = 0; round < ROUNDS; round++) {
+            ByteFrequencyTable[] tables = randomTables(1 + random.nextInt(MAX_KEYLENGTH));
+            int depth = 1 + random.nextInt(MAX_DEPTH);
+            int mostFrequentByte = random.nextInt(ByteFrequencyTable.BYTE_VALUES);
+            KeyGenerator odometer = new KeyGenerator(tables, depth, mostFrequentByte, KeyGenerator.Order.ODOMETER);
+            KeyGenerator bestFirst = new KeyGenerator(tables, depth, mostFrequentByte, KeyGenerator.Order.BEST_FIRST);
+
+            List<List<Integer>> odometerKeys = generate(odometer);
+            List<List<Integer>> bestFirstKeys = generate(bestFirst);
+
+            assertEquals(allCombinations(odometer.getKeyBytes()), odometerKeys);
+            assertEquals(odometer.getNumberOfKeys(), odometerKeys.size());
+            assertEquals(odometerKeys.size(), new HashSet<>(bestFirstKeys).size());
+            assertEquals(new HashSet<>(odometerKeys), new HashSet<>(bestFirstKeys));
+            int rankSum = 0;
+            for (List<Integer> key : bestFirstKeys) {
+                int next = getRankSum(key, bestFirst.getKeyBytes());
+                assertTrue("Rank sum decreases from " + rankSum + " to " + next, next >= rankSum);
+                rankSum = next;
+            }
+        }
+    }
+
+    @Test
+    public void knownPlaintextRemovesExactlyTheKeysViolatingIt() {
+        for (int round = 0; round < ROUNDS; round++) {
+            int keylength = 1 + random.nextInt(MAX_KEYLENGTH);
+            ByteFrequencyTable[] tables = randomTables(keylength);
+            int depth = 1 + random.nextInt(MAX_DEPTH);
+            byte[] ciphertext = randomBytes(CIPHERTEXT_LENGTH);
+            boolean[][][] alternatives = randomConstraints(1 + random.nextInt(3), 2 * keylength);
+            KnownPlaintext knownPlaintext = toKnownPlaintext(alternatives);
+
+            List<List<Integer>> expected = new ArrayList<>();
+            for (List<Integer> key : generate(new KeyGenerator(tables, depth, 0, KeyGenerator.Order.ODOMETER))) {
+                if (satisfiesAny(key, alternatives, ciphertext)) {
+                    expected.add(key);
+                }
+            }
+            KeyGenerator odometer = new KeyGenerator(tables, depth, 0, KeyGenerator.Order.ODOMETER,
+                    knownPlaintext, ciphertext);
+            KeyGenerator bestFirst = new KeyGenerator(tables, depth, 0, KeyGenerator.Order.BEST_FIRST,
+                    knownPlaintext, ciphertext);
+
+            assertEquals(expected, generate(odometer));
+            assertEquals(odometer.getNumberOfKeys(), expected.size() + odometer.getNumberOfKeysRejected());
+            List<List<Integer>> bestFirstKeys = generate(bestFirst);
+            assertEquals(expected.size(), bestFirstKeys.size());
+            assertEquals(new HashSet<>(expected), new HashSet<>(bestFirstKeys));
+        }
+    }
+
+    @Test
+    public void depthFirstVisitsTheOdometerKeysSatisfyingTheRules() {
+        for (int round = 0; round < ROUNDS; round++) {
+            int keylength = 1 + random.nextInt(MAX_KEYLENGTH);
+            ByteFrequencyTable[] tables = randomTables(keylength);
+            int depth = 1 + random.nextInt(MAX_DEPTH);
+            byte[] ciphertext = randomBytes(CIPHERTEXT_LENGTH);
+            KnownPlaintext knownPlaintext = toKnownPlaintext(randomConstraints(1, keylength));
+            List<DepthFirstKeySearch.Rule> rules = new ArrayList<>();
+            List<int[]> ruleSums = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                int[] positions = {random.nextInt(2 * keylength), random.nextInt(2 * keylength)};
+                int modulus = 2 + random.nextInt(3);
+                rules.add(new DepthFirstKeySearch.Rule(p -> sum(p, positions) % modulus != 0, positions));
+                ruleSums.add(new int[]{positions[0], positions[1], modulus});
+            }
+            KeyGenerator odometer = new KeyGenerator(tables, depth, 0, KeyGenerator.Order.ODOMETER,
+                    knownPlaintext, ciphertext);
+            int[][] keyBytes = odometer.getKeyBytes();
+
+            List<List<Integer>> expected = new ArrayList<>();
+            for (List<Integer> key : generate(odometer)) {
+                byte[] plaintext = decrypt(key, ciphertext);
+                if (ruleSums.stream().allMatch(r -> sum(plaintext, r[0], r[1]) % r[2] != 0)) {
+                    expected.add(key);
+                }
+            }
+
+            assertEquals(expected, searchAll(ciphertext, keyBytes, rules, 1));
+            List<List<Integer>> parallel = searchAll(ciphertext, keyBytes, rules, 4);
+            assertEquals(expected.size(), parallel.size());
+            assertEquals(new HashSet<>(expected), new HashSet<>(parallel));
+            if (!expected.isEmpty()) {
+                Set<List<Integer>> valid = new HashSet<>();
+                valid.add(expected.get(random.nextInt(expected.size())));
+                valid.add(expected.get(random.nextInt(expected.size())));
+                int[] key = new DepthFirstKeySearch(ciphertext, keyBytes, rules)
+                        .search(k -> valid.contains(toList(k)), () -> false, 1);
+                assertEquals(expected.stream().filter(valid::contains).findFirst().get(), toList(key));
+            }
+        }
+    }
+
+    /**
+     * @return All keys of the search, which are validated without finding one
+     */
+    private static List<List<Integer>> searchAll(byte[] ciphertext, int[][] keyBytes,
+                                                 List<DepthFirstKeySearch.Rule> rules, int parallelism) {
+        List<List<Integer>> visited = Collections.synchronizedList(new ArrayList<>());
+        new DepthFirstKeySearch(ciphertext, keyBytes, rules).search(k -> {
+            visited.add(toList(k));
+            return false;
+        }, () -> false, parallelism);
+        return visited;
+    }
+
+    private ByteFrequencyTable[] randomTables(int keylength) {
+        ByteFrequencyTable[] tables = new ByteFrequencyTable[keylength];
+        for (int slot = 0; slot < keylength; slot++) {
+            tables[slot] = new ByteFrequencyTable();
+            for (int i = 0; i < 200; i++) {
+                // Few distinct values, so that there are ties
+                tables[slot].addByte(random.nextInt(16) * 16);
+            }
+        }
+        return tables;
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * @return Per alternative and position, the allowed plaintext values
+     */
+    private boolean[][][] randomConstraints(int numberOfAlternatives, int positions) {
+        boolean[][][] alternatives = new boolean[numberOfAlternatives][positions][ByteFrequencyTable.BYTE_VALUES];
+        for (boolean[][] alternative : alternatives) {
+            for (boolean[] allowed : alternative) {
+                for (int value = 0; value < allowed.length; value++) {
+                    allowed[value] = random.nextInt(4) != 0;
+                }
+            }
+        }
+        return alternatives;
+    }
+
+    private static KnownPlaintext toKnownPlaintext(boolean[][][] alternatives) {
+        KnownPlaintext knownPlaintext = new KnownPlaintext();
+        for (boolean[][] alternative : alternatives) {
+            int index = knownPlaintext.addAlternative();
+            for (int position = 0; position < alternative.length; position++) {
+                int[] values = new int[ByteFrequencyTable.BYTE_VALUES];
+                int count = 0;
+                for (int value = 0; value < values.length; value++) {
+                    if (alternative[position][value]) {
+                        values[count++] = value;
+                    }
+                }
+                knownPlaintext.require(index, position, Arrays.copyOf(values, count));
+            }
+        }
+        return knownPlaintext;
+    }
+
+    private static boolean satisfiesAny(List<Integer> key, boolean[][][] alternatives, byte[] ciphertext) {
+        byte[] plaintext = decrypt(key, ciphertext);
+        for (boolean[][] alternative : alternatives) {
+            boolean satisfied = true;
+            for (int position = 0; position < alternative.length; position++) {
+                satisfied &= alternative[position][plaintext[position] & 0xFF];
+            }
+            if (satisfied) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<List<Integer>> generate(KeyGenerator keyGenerator) {
+        List<List<Integer>> keys = new ArrayList<>();
+        int[] key;
+        while ((key = keyGenerator.getNextCandidateKey()) != null) {
+            keys.add(toList(key));
+        }
+        return keys;
+    }
+
+    /**
+     * @return All combinations of the key bytes in odometer order, computed independently
+     */
+    private static List<List<Integer>> allCombinations(int[][] keyBytes) {
+        List<List<Integer>> keys = new ArrayList<>();
+        keys.add(new ArrayList<>());
+        for (int[] candidates : keyBytes) {
+            List<List<Integer>> longer = new ArrayList<>();
+            for (List<Integer> prefix : keys) {
+                for (int keyByte : candidates) {
+                    List<Integer> key = new ArrayList<>(prefix);
+                    key.add(keyByte);
+                    longer.add(key);
+                }
+            }
+            keys = longer;
+        }
+        return keys;
+    }
+
+    private static int getRankSum(List<Integer> key, int[][] keyBytes) {
+        int rankSum = 0;
+        for (int slot = 0; slot < key.size(); slot++) {
+            int rank = 0;
+            while (keyBytes[slot][rank] != key.get(slot)) {
+                rank++;
+            }
+            rankSum += rank;
+        }
+        return rankSum;
+    }
+
+    private static byte[] decrypt(List<Integer> key, byte[] ciphertext) {
+        byte[] plaintext = new byte[ciphertext.length];
+        for (int i = 0; i < plaintext.length; i++) {
+            plaintext[i] = (byte) (ciphertext[i] ^ key.get(i % key.size()));
+        }
+        return plaintext;
+    }
+
+    private static int sum(byte[] plaintext, int... positions) {
+        int sum = 0;
+        for (int position : positions) {
+            sum += plaintext[position] & 0xFF;
+        }
+        return sum;
+    }
+
+    private static List<Integer> toList(int[] key) {
+        List<Integer> list = new ArrayList<>();
+        for (int keyByte : key) {
+            list.add(keyByte);
+        }
+        return list;
+    }
+}